@@ -0,0 +1,26 @@
+package org.wowtools.georewrite.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 性能测试入口，参数与JMH命令行相同，默认加上gc profiler以输出内存分配速率(gc.alloc.rate.norm)
+ * <p>
+ * 例: java -jar target/benchmarks.jar FindBenchmark -p size=1000000 -jvmArgs -Xmx32g
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        Options opt = new OptionsBuilder()
+                .parent(cmd)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
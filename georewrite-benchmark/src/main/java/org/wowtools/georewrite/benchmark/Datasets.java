@@ -0,0 +1,202 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.khelekore.prtree.BulkLoader;
+import org.khelekore.prtree.BulkLoaders;
+import org.khelekore.prtree.MBRConverter;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * 性能测试用的合成数据，每个对象为一个double[]{xmin, ymin, xmax, ymax}，均落在[0,WORLD]的正方形内
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class Datasets {
+
+    /**
+     * 数据范围的边长
+     */
+    public static final double WORLD = 1000;
+
+    /**
+     * 数据分布
+     */
+    public enum Distribution {
+        /**
+         * 均匀分布的点
+         */
+        UNIFORM,
+        /**
+         * 聚集在若干个正态分布簇中的点
+         */
+        CLUSTERED,
+        /**
+         * 随机方向的长线段的外接矩形，矩形之间重叠较多
+         */
+        LINES
+    }
+
+    /**
+     * 构建树的算法
+     */
+    public enum Loader {
+        PRIORITY, PRIORITY_LOW_MEMORY, HILBERT, STR;
+
+        public BulkLoader get() {
+            switch (this) {
+                case PRIORITY_LOW_MEMORY:
+                    return BulkLoaders.priorityLowMemory();
+                case HILBERT:
+                    return BulkLoaders.hilbert();
+                case STR:
+                    return BulkLoaders.str();
+                default:
+                    return BulkLoaders.priority();
+            }
+        }
+    }
+
+    /**
+     * 树的存储结构
+     */
+    public enum Layout {
+        /**
+         * 由节点对象组成的PRTree
+         */
+        PRTREE,
+        /**
+         * 把PRTree压平为数组的PackedPRTree，数据的外接矩形通过MBRConverter读取
+         */
+        PACKED,
+        /**
+         * 外接矩形量化为int的QuantizedPRTree，即PrtreeIndex.Storage.QUANTIZED
+         */
+        QUANTIZED,
+        /**
+         * 存放在堆外内存中的BufferPRTree，即PrtreeIndex.Storage.OFF_HEAP
+         */
+        OFF_HEAP
+    }
+
+    public static final MBRConverter<double[]> CONVERTER = new MBRConverter<double[]>() {
+        public int getDimensions() {
+            return 2;
+        }
+
+        public double getMin(int axis, double[] t) {
+            return t[axis];
+        }
+
+        public double getMax(int axis, double[] t) {
+            return t[axis + 2];
+        }
+    };
+
+    private static final int CLUSTERS = 100;
+    private static final double CLUSTER_SIGMA = WORLD / 100;
+    private static final double MAX_LINE_LENGTH = WORLD / 10;
+
+    /**
+     * 生成数据，相同的参数总是生成相同的数据
+     *
+     * @param distribution 数据分布
+     * @param size         对象个数
+     * @param seed         随机种子
+     * @return 数据
+     */
+    public static List<double[]> generate(Distribution distribution, int size, long seed) {
+        Random r = new Random(seed);
+        List<double[]> ret = new ArrayList<>(size);
+        switch (distribution) {
+            case UNIFORM:
+                for (int i = 0; i < size; i++) {
+                    double x = r.nextDouble() * WORLD;
+                    double y = r.nextDouble() * WORLD;
+                    ret.add(new double[]{x, y, x, y});
+                }
+                break;
+            case CLUSTERED:
+                double[] centers = new double[2 * CLUSTERS];
+                for (int i = 0; i < centers.length; i++) {
+                    centers[i] = r.nextDouble() * WORLD;
+                }
+                for (int i = 0; i < size; i++) {
+                    int c = 2 * r.nextInt(CLUSTERS);
+                    double x = clamp(centers[c] + r.nextGaussian() * CLUSTER_SIGMA);
+                    double y = clamp(centers[c + 1] + r.nextGaussian() * CLUSTER_SIGMA);
+                    ret.add(new double[]{x, y, x, y});
+                }
+                break;
+            case LINES:
+                for (int i = 0; i < size; i++) {
+                    double x1 = r.nextDouble() * WORLD;
+                    double y1 = r.nextDouble() * WORLD;
+                    double a = r.nextDouble() * 2 * Math.PI;
+                    double l = r.nextDouble() * MAX_LINE_LENGTH;
+                    double x2 = clamp(x1 + Math.cos(a) * l);
+                    double y2 = clamp(y1 + Math.sin(a) * l);
+                    ret.add(new double[]{Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2)});
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("未知的分布:" + distribution);
+        }
+        return ret;
+    }
+
+    /**
+     * 生成与generate相同的数据，LINES为线段，其它为点，用于测试PrtreeIndex
+     *
+     * @param distribution 数据分布
+     * @param size         对象个数
+     * @param seed         随机种子
+     * @return 数据
+     */
+    public static List<Geometry> geometries(Distribution distribution, int size, long seed) {
+        GeometryFactory gf = new GeometryFactory();
+        List<Geometry> ret = new ArrayList<>(size);
+        for (double[] b : generate(distribution, size, seed)) {
+            if (distribution == Distribution.LINES) {
+                ret.add(gf.createLineString(new Coordinate[]{
+                        new Coordinate(b[0], b[1]), new Coordinate(b[2], b[3])}));
+            } else {
+                ret.add(gf.createPoint(new Coordinate(b[0], b[1])));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 生成查询范围，每个范围为正方形，面积为整个数据范围的selectivity倍
+     *
+     * @param count       范围个数
+     * @param selectivity 范围面积占比
+     * @param seed        随机种子
+     * @return 每个范围依次为xmin,ymin,xmax,ymax
+     */
+    public static double[] windows(int count, double selectivity, long seed) {
+        Random r = new Random(seed);
+        double side = Math.sqrt(selectivity) * WORLD;
+        double[] ret = new double[4 * count];
+        for (int i = 0, p = 0; i < count; i++) {
+            double x = r.nextDouble() * (WORLD - side);
+            double y = r.nextDouble() * (WORLD - side);
+            ret[p++] = x;
+            ret[p++] = y;
+            ret[p++] = x + side;
+            ret[p++] = y + side;
+        }
+        return ret;
+    }
+
+    private static double clamp(double d) {
+        return Math.max(0, Math.min(WORLD, d));
+    }
+}
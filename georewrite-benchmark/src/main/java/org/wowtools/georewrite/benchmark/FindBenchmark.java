@@ -0,0 +1,150 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.prtree.BatchVisitor;
+import org.khelekore.prtree.NodeVisitor;
+import org.khelekore.prtree.PRTree;
+import org.khelekore.prtree.QueryContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * PRTree范围查询性能，selectivity为查询范围面积占整个数据范围的比例
+ * <p>
+ * 默认只跑100万条数据，覆盖小、中、大三种查询范围，其它规模用-p指定，千万级以上需要加大堆，
+ * 例: -p size=10000,10000000,50000000 -jvmArgs -Xmx32g
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindBenchmark {
+
+    /**
+     * 预先生成的查询范围个数，查询时循环使用
+     */
+    private static final int WINDOWS = 1024;
+    /**
+     * 批量查询时一批的范围个数，相当于一个8x8的metatile
+     */
+    private static final int BATCH_SIDE = 8;
+
+    @Param({"UNIFORM", "CLUSTERED", "LINES"})
+    public Datasets.Distribution distribution;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"0.000001", "0.0001", "0.01"})
+    public double selectivity;
+
+    @Param({"PRIORITY", "HILBERT", "STR"})
+    public Datasets.Loader loader;
+
+    @Param({"30"})
+    public int branchFactor;
+
+    private PRTree<double[]> tree;
+    private double[] windows;
+    private double[][] batches;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tree = new PRTree<>(Datasets.CONVERTER, branchFactor);
+        tree.load(Datasets.generate(distribution, size, 1), loader.get());
+        windows = Datasets.windows(WINDOWS, selectivity, 2);
+        // 把每个查询范围切成8x8个相邻的小范围，模拟一个metatile的请求
+        batches = new double[WINDOWS][];
+        for (int i = 0; i < WINDOWS; i++) {
+            double x = windows[4 * i];
+            double y = windows[4 * i + 1];
+            double side = (windows[4 * i + 2] - x) / BATCH_SIDE;
+            double[] b = new double[4 * BATCH_SIDE * BATCH_SIDE];
+            int p = 0;
+            for (int row = 0; row < BATCH_SIDE; row++) {
+                for (int col = 0; col < BATCH_SIDE; col++) {
+                    b[p++] = x + col * side;
+                    b[p++] = y + row * side;
+                    b[p++] = x + (col + 1) * side;
+                    b[p++] = y + (row + 1) * side;
+                }
+            }
+            batches[i] = b;
+        }
+    }
+
+    /**
+     * 每个线程自己的查询状态
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final QueryContext ctx = new QueryContext();
+        int next;
+        Blackhole bh;
+        final NodeVisitor<double[]> visitor = t -> bh.consume(t);
+        final BatchVisitor<double[]> batchVisitor = (q, t) -> bh.consume(t);
+
+        int nextWindow() {
+            next = (next + 1) & (WINDOWS - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    public List<double[]> findList(ThreadState s) {
+        int p = 4 * s.nextWindow();
+        List<double[]> ret = new ArrayList<>();
+        tree.find(windows[p], windows[p + 1], windows[p + 2], windows[p + 3], ret);
+        return ret;
+    }
+
+    @Benchmark
+    public void findVisitor(ThreadState s, Blackhole bh) {
+        int p = 4 * s.nextWindow();
+        s.bh = bh;
+        tree.find(windows[p], windows[p + 1], windows[p + 2], windows[p + 3], s.ctx, s.visitor);
+    }
+
+    @Benchmark
+    public int count(ThreadState s) {
+        int p = 4 * s.nextWindow();
+        return tree.count(windows[p], windows[p + 1], windows[p + 2], windows[p + 3]);
+    }
+
+    @Benchmark
+    public void findBatch(ThreadState s, Blackhole bh) {
+        s.bh = bh;
+        tree.find(batches[s.nextWindow()], s.ctx, s.batchVisitor);
+    }
+
+    /**
+     * 与findBatch相同的范围，逐个查询，用于对比
+     */
+    @Benchmark
+    public void findBatchOneByOne(ThreadState s, Blackhole bh) {
+        s.bh = bh;
+        double[] b = batches[s.nextWindow()];
+        for (int p = 0; p < b.length; p += 4) {
+            tree.find(b[p], b[p + 1], b[p + 2], b[p + 3], s.ctx, s.visitor);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.khelekore.prtree.BufferPRTree;
+import org.khelekore.prtree.PRTree;
+import org.khelekore.prtree.PackedPRTree;
+import org.khelekore.prtree.QuantizedPRTree;
+import org.wowtools.georewrite.PrtreeIndex;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * 比较不同树结构在同一份数据上占用的内存，这是一个诊断工具而不是JMH测试，只统计内存，不计时
+ * <p>
+ * 占用的内存为构建后与构建前的已用堆之差，测量前反复gc，数据本身(double[])不计在内。
+ * OFF_HEAP另外统计占用的堆外内存(direct buffer pool)，bytes/entry为堆内与堆外之和。
+ * 之后再对同样的数据(几何对象)比较PrtreeIndex各种Storage的占用，几何对象本身不计在内。
+ * 需要较大的堆以及稳定的gc，例: java -Xmx8g -XX:+UseSerialGC -cp target/benchmarks.jar
+ * org.wowtools.georewrite.benchmark.Footprint 1000000
+ * <p>
+ * 用法: Footprint [size] [branchFactor]
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class Footprint {
+
+    /**
+     * 测量时引用着刚构建的树，防止它在测量前被回收
+     */
+    private static Object keep;
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int branchFactor = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        System.out.printf("%-10s %-10s %12s %12s %14s%n", "data", "layout", "heap MB", "direct MB", "bytes/entry");
+        for (Datasets.Distribution d : Datasets.Distribution.values()) {
+            List<double[]> data = Datasets.generate(d, size, 1);
+            for (Datasets.Layout layout : Datasets.Layout.values()) {
+                long before = usedHeap();
+                long directBefore = directMemory();
+                keep = build(layout, data, branchFactor);
+                long heap = usedHeap() - before;
+                long direct = directMemory() - directBefore;
+                if (keep instanceof Closeable) {
+                    ((Closeable) keep).close();
+                }
+                keep = null;
+                System.out.printf("%-10s %-10s %12.1f %12.1f %14.1f%n", d, layout, heap / 1e6, direct / 1e6,
+                        (double) (heap + direct) / size);
+            }
+        }
+        System.out.println();
+        System.out.printf("%-10s %-10s %12s %12s %14s%n", "data", "storage", "heap MB", "direct MB", "bytes/entry");
+        for (Datasets.Distribution d : Datasets.Distribution.values()) {
+            List<Geometry> geometries = Datasets.geometries(d, size, 1);
+            for (PrtreeIndex.Storage storage : PrtreeIndex.Storage.values()) {
+                long before = usedHeap();
+                long directBefore = directMemory();
+                PrtreeIndex<Geometry> index = new PrtreeIndex<>(geometries, g -> g, Datasets.Loader.PRIORITY.get(),
+                        storage);
+                keep = index;
+                long heap = usedHeap() - before;
+                long direct = directMemory() - directBefore;
+                index.close();
+                keep = null;
+                System.out.printf("%-10s %-10s %12.1f %12.1f %14.1f%n", d, storage, heap / 1e6, direct / 1e6,
+                        (double) (heap + direct) / size);
+            }
+        }
+    }
+
+    /**
+     * 按给定结构构建一棵树，构建过程中的临时对象在返回后都可以被回收
+     *
+     * @param layout       树结构
+     * @param data         数据
+     * @param branchFactor 分支数
+     * @return 构建好的树，OFF_HEAP用完后需要close
+     */
+    static Object build(Datasets.Layout layout, List<double[]> data, int branchFactor) {
+        PRTree<double[]> tree = new PRTree<>(Datasets.CONVERTER, branchFactor);
+        tree.load(data);
+        switch (layout) {
+            case PACKED:
+                return new PackedPRTree<>(tree);
+            case QUANTIZED:
+                return new QuantizedPRTree<>(tree);
+            case OFF_HEAP:
+                return BufferPRTree.offHeap(tree, t -> t);
+            default:
+                return tree;
+        }
+    }
+
+    /**
+     * @return 已分配的堆外内存(direct buffer)字节数
+     */
+    static long directMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 反复gc直到已用堆稳定，返回已用堆的字节数
+     *
+     * @return 已用堆
+     */
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long u = rt.totalMemory() - rt.freeMemory();
+            if (u >= used) {
+                return u;
+            }
+            used = u;
+        }
+        return used;
+    }
+}
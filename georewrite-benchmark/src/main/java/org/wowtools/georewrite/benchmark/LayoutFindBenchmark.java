@@ -0,0 +1,131 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.prtree.BufferPRTree;
+import org.khelekore.prtree.NodeVisitor;
+import org.khelekore.prtree.PRTree;
+import org.khelekore.prtree.PackedPRTree;
+import org.khelekore.prtree.QuantizedPRTree;
+import org.khelekore.prtree.QueryContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 同一份数据上不同树结构的范围查询性能对比，setup时输出树占用的堆内存和堆外内存
+ * <p>
+ * 例: java -jar target/benchmarks.jar LayoutFindBenchmark -p size=10000000 -jvmArgs -Xmx16g
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ * @see Footprint
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutFindBenchmark {
+
+    private static final int WINDOWS = 1024;
+
+    @Param({"UNIFORM", "LINES"})
+    public Datasets.Distribution distribution;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"0.0001"})
+    public double selectivity;
+
+    @Param({"PRTREE", "PACKED", "QUANTIZED", "OFF_HEAP"})
+    public Datasets.Layout layout;
+
+    @Param({"30"})
+    public int branchFactor;
+
+    private PRTree<double[]> tree;
+    private PackedPRTree<double[]> packed;
+    private QuantizedPRTree<double[]> quantized;
+    private BufferPRTree<double[]> offHeap;
+    private double[] windows;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        List<double[]> data = Datasets.generate(distribution, size, 1);
+        long before = Footprint.usedHeap();
+        long directBefore = Footprint.directMemory();
+        Object t = Footprint.build(layout, data, branchFactor);
+        long heap = Footprint.usedHeap() - before;
+        long direct = Footprint.directMemory() - directBefore;
+        System.out.printf("%n%s retained heap: %.1f MB, direct: %.1f MB, %.1f bytes/entry%n", layout, heap / 1e6,
+                direct / 1e6, (double) (heap + direct) / size);
+        switch (layout) {
+            case PACKED:
+                packed = (PackedPRTree<double[]>) t;
+                break;
+            case QUANTIZED:
+                quantized = (QuantizedPRTree<double[]>) t;
+                break;
+            case OFF_HEAP:
+                offHeap = (BufferPRTree<double[]>) t;
+                break;
+            default:
+                tree = (PRTree<double[]>) t;
+        }
+        windows = Datasets.windows(WINDOWS, selectivity, 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (null != offHeap) {
+            offHeap.close();
+        }
+    }
+
+    /**
+     * 每个线程自己的查询状态
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final QueryContext ctx = new QueryContext();
+        int next;
+        Blackhole bh;
+        final NodeVisitor<double[]> visitor = t -> bh.consume(t);
+
+        int nextWindow() {
+            next = (next + 1) & (WINDOWS - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    public void findVisitor(ThreadState s, Blackhole bh) {
+        int p = 4 * s.nextWindow();
+        s.bh = bh;
+        if (null != packed) {
+            packed.find(windows[p], windows[p + 1], windows[p + 2], windows[p + 3], s.ctx, s.visitor);
+        } else if (null != quantized) {
+            quantized.find(windows[p], windows[p + 1], windows[p + 2], windows[p + 3], s.ctx, s.visitor);
+        } else if (null != offHeap) {
+            offHeap.find(windows[p], windows[p + 1], windows[p + 2], windows[p + 3], s.ctx, s.visitor);
+        } else {
+            tree.find(windows[p], windows[p + 1], windows[p + 2], windows[p + 3], s.ctx, s.visitor);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.prtree.PRTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PRTree构建性能，每次调用构建一棵完整的树
+ * <p>
+ * 默认只跑100万条数据，其它规模用-p指定，例: -p size=10000000,50000000 -jvmArgs -Xmx32g
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED", "LINES"})
+    public Datasets.Distribution distribution;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"PRIORITY", "PRIORITY_LOW_MEMORY", "HILBERT", "STR"})
+    public Datasets.Loader loader;
+
+    @Param({"30"})
+    public int branchFactor;
+
+    private List<double[]> data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = Datasets.generate(distribution, size, 1);
+    }
+
+    @Benchmark
+    public PRTree<double[]> load() {
+        PRTree<double[]> tree = new PRTree<>(Datasets.CONVERTER, branchFactor);
+        tree.load(data, loader.get());
+        return tree;
+    }
+}
@@ -0,0 +1,38 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.util.List;
+
+import org.khelekore.prtree.NodeStats;
+import org.khelekore.prtree.PRTree;
+
+/**
+ * 比较不同构建算法在同一份数据上构建出的树结构，这是一个诊断工具而不是JMH测试，只输出节点数、叶子填充率和节点重叠度，不计时。
+ * 构建耗时和查询延迟见LoadBenchmark和FindBenchmark
+ * <p>
+ * 节点重叠度见NodeStats.getMeanOverlap，越小则小范围查询需要进入的分支越少
+ * <p>
+ * 用法: LoaderReport [size] [branchFactor]
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class LoaderReport {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int branchFactor = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        System.out.printf("%-10s %-20s %8s %10s %10s %8s%n",
+                "data", "loader", "height", "nodes", "leaf fill", "overlap");
+        for (Datasets.Distribution d : Datasets.Distribution.values()) {
+            List<double[]> data = Datasets.generate(d, size, 1);
+            for (Datasets.Loader l : Datasets.Loader.values()) {
+                PRTree<double[]> tree = new PRTree<>(Datasets.CONVERTER, branchFactor);
+                tree.load(data, l.get());
+                NodeStats stats = tree.getNodeStats();
+                System.out.printf("%-10s %-20s %8d %10d %10.1f %8.4f%n", d, l, stats.getHeight(),
+                        stats.getInternalNodes() + stats.getLeafNodes(), stats.getMeanLeafFill(),
+                        stats.getMeanOverlap());
+            }
+        }
+    }
+}
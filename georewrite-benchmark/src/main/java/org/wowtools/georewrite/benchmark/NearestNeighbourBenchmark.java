@@ -0,0 +1,103 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.khelekore.prtree.AcceptAll;
+import org.khelekore.prtree.DistanceCalculator;
+import org.khelekore.prtree.DistanceResult;
+import org.khelekore.prtree.MinDist2D;
+import org.khelekore.prtree.NodeFilter;
+import org.khelekore.prtree.PRTree;
+import org.khelekore.prtree.SimplePointND;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * PRTree最近邻查询性能
+ * <p>
+ * 默认只跑100万条数据，其它规模用-p指定，例: -p size=10000000,50000000 -jvmArgs -Xmx32g
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearestNeighbourBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private static final DistanceCalculator<double[]> DISTANCE = (t, p) ->
+            MinDist2D.get(t[0], t[1], t[2], t[3], p.getOrd(0), p.getOrd(1));
+
+    private static final NodeFilter<double[]> ACCEPT_ALL = new AcceptAll<>();
+
+    @Param({"UNIFORM", "CLUSTERED", "LINES"})
+    public Datasets.Distribution distribution;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"1", "10", "100", "10000"})
+    public int k;
+
+    @Param({"30"})
+    public int branchFactor;
+
+    private PRTree<double[]> tree;
+    private SimplePointND[] points;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tree = new PRTree<>(Datasets.CONVERTER, branchFactor);
+        tree.load(Datasets.generate(distribution, size, 1));
+        Random r = new Random(2);
+        points = new SimplePointND[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = new SimplePointND(r.nextDouble() * Datasets.WORLD, r.nextDouble() * Datasets.WORLD);
+        }
+    }
+
+    /**
+     * 每个线程自己的查询点游标
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+
+        SimplePointND nextPoint(SimplePointND[] points) {
+            next = (next + 1) & (POINTS - 1);
+            return points[next];
+        }
+    }
+
+    @Benchmark
+    public List<DistanceResult<double[]>> nearestNeighbour(ThreadState s) {
+        return tree.nearestNeighbour(DISTANCE, ACCEPT_ALL, k, s.nextPoint(points));
+    }
+
+    @Benchmark
+    public void nearestNeighbourIterator(ThreadState s, Blackhole bh) {
+        Iterator<DistanceResult<double[]>> it = tree.nearestNeighbourIterator(DISTANCE, ACCEPT_ALL, s.nextPoint(points));
+        for (int i = 0; i < k && it.hasNext(); i++) {
+            bh.consume(it.next());
+        }
+    }
+}
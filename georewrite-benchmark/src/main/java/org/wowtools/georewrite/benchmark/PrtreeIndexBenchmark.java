@@ -0,0 +1,82 @@
+package org.wowtools.georewrite.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wowtools.georewrite.PrtreeIndex;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * PrtreeIndex构建性能，包含从geometry取外接矩形的开销
+ * <p>
+ * 默认只跑100万条数据，其它规模用-p指定，例: -p size=10000,10000000 -jvmArgs -Xmx16g
+ * <p>
+ * build为顺序构建，buildParallel在有threads个线程的ForkJoinPool中并行取外接矩形并用priority(pool)构建树，
+ * 与loader无关，两者对比时看loader=PRIORITY的build
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PrtreeIndexBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED", "LINES"})
+    public Datasets.Distribution distribution;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"PRIORITY", "HILBERT", "STR"})
+    public Datasets.Loader loader;
+
+    /**
+     * buildParallel的线程数
+     */
+    @Param({"4"})
+    public int threads;
+
+    private List<Geometry> geometries;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        geometries = Datasets.geometries(distribution, size, 1);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public PrtreeIndex<Geometry> build() {
+        return new PrtreeIndex<>(geometries, g -> g, loader.get());
+    }
+
+    @Benchmark
+    public PrtreeIndex<Geometry> buildParallel() {
+        return new PrtreeIndex<>(geometries, g -> g, PrtreeIndex.Storage.HEAP, pool);
+    }
+}
@@ -0,0 +1,16 @@
+package org.khelekore.prtree;
+
+/**
+ * A callback that receives the objects found by a batch of queries.
+ *
+ * @param <T> the node type
+ */
+public interface BatchVisitor<T> {
+    /**
+     * Called once for every object found by every query.
+     *
+     * @param query the index of the query in the batch
+     * @param t     the node user data
+     */
+    void visit(int query, T t);
+}
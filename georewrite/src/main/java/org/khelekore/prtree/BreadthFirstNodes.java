@@ -0,0 +1,63 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The nodes of a loaded tree in breadth first order, used when copying
+ * a tree into a flat layout.
+ * <p>
+ * <p>All leaf nodes of a PRTree are on the same level so in breadth first
+ * order the leaf nodes come after all the internal nodes, and the children
+ * of each node are stored next to each other.
+ *
+ * @param <T> the data type stored in the tree
+ */
+class BreadthFirstNodes<T> {
+    private final List<Node<T>> nodes = new ArrayList<>();
+    private final int firstLeafNode;
+    private final int numEntries;
+
+    public BreadthFirstNodes(Node<T> root) {
+        nodes.add(root);
+        int entries = 0;
+        int leafs = -1;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node<T> n = nodes.get(i);
+            if (n instanceof InternalNode) {
+                InternalNode<T> in = (InternalNode<T>) n;
+                for (int j = 0, s = in.size(); j < s; j++)
+                    nodes.add(in.get(j));
+            } else {
+                if (leafs < 0)
+                    leafs = i;
+                entries += n.size();
+            }
+        }
+        firstLeafNode = leafs < 0 ? nodes.size() : leafs;
+        numEntries = entries;
+    }
+
+    public int getNumberOfNodes() {
+        return nodes.size();
+    }
+
+    public Node<T> get(int i) {
+        return nodes.get(i);
+    }
+
+    /**
+     * @return the index of the first leaf node, nodes with a lower index
+     * are internal nodes
+     */
+    public int getFirstLeafNode() {
+        return firstLeafNode;
+    }
+
+    /**
+     * @return the total number of data entries in the leaf nodes
+     */
+    public int getNumberOfEntries() {
+        return numEntries;
+    }
+}
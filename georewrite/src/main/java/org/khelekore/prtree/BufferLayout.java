@@ -0,0 +1,77 @@
+package org.khelekore.prtree;
+
+/**
+ * The layout of a tree stored in a buffer or a file.
+ * <p>
+ * <p>A file starts with a header of HEADER_SIZE bytes, the rest of the file
+ * is the body. All values are little endian and every section of the body
+ * starts on an 8 byte boundary. The body holds, in order:
+ * <ul>
+ * <li>the node bounds, min, max, min, max ... as doubles, nodes in
+ * breadth first order</li>
+ * <li>the entry bounds, in the same format, entries in leaf order</li>
+ * <li>the first child of each node as an int, a node index for internal
+ * nodes and an entry index for leaf nodes</li>
+ * <li>the number of children of each node as an int</li>
+ * <li>the ordinal of each entry in the data list as an int</li>
+ * </ul>
+ */
+class BufferLayout {
+    static final int MAGIC = 0x50525446;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final int MAGIC_POS = 0;
+    static final int FORMAT_VERSION_POS = 4;
+    static final int DATA_VERSION_POS = 8;
+    static final int DIMENSIONS_POS = 16;
+    static final int BRANCH_FACTOR_POS = 20;
+    static final int HEIGHT_POS = 24;
+    static final int NUM_NODES_POS = 28;
+    static final int FIRST_LEAF_NODE_POS = 32;
+    static final int NUM_ENTRIES_POS = 36;
+    static final int CHECKSUM_POS = 40;
+
+    final int dimensions;
+    final int branchFactor;
+    final int height;
+    final int numNodes;
+    final int firstLeafNode;
+    final int numEntries;
+
+    final long nodeBoundsPos;
+    final long entryBoundsPos;
+    final long firstChildPos;
+    final long childCountPos;
+    final long ordinalsPos;
+    final long bodySize;
+
+    BufferLayout(int dimensions, int branchFactor, int height,
+                 int numNodes, int firstLeafNode, int numEntries) {
+        this.dimensions = dimensions;
+        this.branchFactor = branchFactor;
+        this.height = height;
+        this.numNodes = numNodes;
+        this.firstLeafNode = firstLeafNode;
+        this.numEntries = numEntries;
+        long stride = 16L * dimensions;
+        nodeBoundsPos = 0;
+        entryBoundsPos = nodeBoundsPos + stride * numNodes;
+        firstChildPos = entryBoundsPos + stride * numEntries;
+        childCountPos = firstChildPos + align(4L * numNodes);
+        ordinalsPos = childCountPos + align(4L * numNodes);
+        bodySize = ordinalsPos + align(4L * numEntries);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    long getNodeBoundsPos(int node) {
+        return nodeBoundsPos + 16L * dimensions * node;
+    }
+
+    long getEntryBoundsPos(int entry) {
+        return entryBoundsPos + 16L * dimensions * entry;
+    }
+}
@@ -0,0 +1,603 @@
+package org.khelekore.prtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A read only Priority R-Tree that reads its nodes from a buffer, for
+ * instance a memory mapped file written by {@link PRTreeFile} or direct
+ * memory allocated by {@link #offHeap}.
+ * <p>
+ * <p>The layout is the same as for {@link PackedPRTree}, but the bounds
+ * and the child offsets are read from the buffer on each query, so the
+ * tree takes almost no heap and is ready as soon as the buffer is mapped.
+ * The data objects are looked up by ordinal in the data list.
+ * <p>
+ * <p>The buffer is freed by {@link #close}, or when the tree is garbage
+ * collected if it is never closed. Every query counts itself as a reader
+ * of the buffer while it runs, a close only frees the buffer once the
+ * last running query is done.
+ *
+ * @param <T> the data type stored in the tree
+ */
+public class BufferPRTree<T> implements Closeable {
+
+    private final BufferLayout layout;
+    private final ChunkedBuffer buf;
+    private final List<? extends T> data;
+    private volatile boolean closed;
+    /**
+     * the running queries, plus one until the tree is closed
+     */
+    private final AtomicInteger readers = new AtomicInteger(1);
+
+    BufferPRTree(BufferLayout layout, ChunkedBuffer buf,
+                 List<? extends T> data) {
+        this.layout = layout;
+        this.buf = buf;
+        this.data = data;
+    }
+
+    /**
+     * Copy a loaded tree into direct memory. The bounds, the nodes and the
+     * entry ordinals are kept outside of the java heap, so they are never
+     * scanned or copied by the garbage collector. Only a list with one
+     * reference per entry stays on the heap.
+     *
+     * @param tree   a loaded tree, it is not used after this call
+     * @param mapper gives the value to store for each entry of the tree,
+     *               this lets the heap drop the objects that only held the
+     *               bounds
+     * @param <S>    the data type of the given tree
+     * @param <T>    the data type stored in the new tree
+     * @return the new tree, close it to free the direct memory
+     * @throws IllegalStateException if the tree is not loaded
+     */
+    public static <S, T> BufferPRTree<T> offHeap(PRTree<S> tree,
+                                                 Function<? super S, ? extends T> mapper) {
+        Node<S> root = tree.getRoot();
+        if (root == null)
+            throw new IllegalStateException("Tree is not loaded");
+        BreadthFirstNodes<S> nodes = new BreadthFirstNodes<>(root);
+        BufferLayout layout = new BufferLayout(
+                tree.getConverter().getDimensions(), tree.getBranchFactor(),
+                tree.getHeight(), nodes.getNumberOfNodes(),
+                nodes.getFirstLeafNode(), nodes.getNumberOfEntries());
+        ChunkedBuffer buf = ChunkedBuffer.allocateDirect(layout.bodySize);
+        List<T> data = new ArrayList<>(layout.numEntries);
+        boolean done = false;
+        try {
+            BufferWriter w = new BufferWriter(buf);
+            PRTreeFile.writeBody(layout, nodes, tree.getConverter(), w);
+            // entries are stored in leaf order so the ordinal is the position
+            for (int i = layout.firstLeafNode; i < layout.numNodes; i++) {
+                LeafNode<S> ln = (LeafNode<S>) nodes.get(i);
+                for (int j = 0, s = ln.size(); j < s; j++) {
+                    w.putInt(data.size());
+                    data.add(mapper.apply(ln.get(j)));
+                }
+            }
+            done = true;
+        } catch (IOException e) {
+            // BufferWriter does not do any io
+            throw new IllegalStateException(e);
+        } finally {
+            if (!done)
+                buf.free();
+        }
+        return new BufferPRTree<>(layout, buf, data);
+    }
+
+    /**
+     * Writes sequentially into a buffer.
+     */
+    private static class BufferWriter implements PRTreeFile.BodyOutput {
+        private final ChunkedBuffer buf;
+        private long position;
+
+        public BufferWriter(ChunkedBuffer buf) {
+            this.buf = buf;
+        }
+
+        public void putDouble(double d) {
+            buf.putDouble(position, d);
+            position += 8;
+        }
+
+        public void putInt(int i) {
+            buf.putInt(position, i);
+            position += 4;
+        }
+
+        public void align() {
+            position = (position + 7) & ~7L;
+        }
+    }
+
+    /**
+     * Free the buffer of this tree, a mapped file is unmapped. Queries
+     * that are running keep the buffer until they are done, it is freed
+     * when the last of them returns. Queries started after the close fail
+     * with an IllegalStateException.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        release();
+    }
+
+    /**
+     * Check if this tree has been closed
+     *
+     * @return true if close has been called
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Count a reader of the buffer, every call must be followed by a
+     * call to release.
+     */
+    private void acquire() {
+        while (true) {
+            int n = readers.get();
+            if (n == 0 || closed)
+                throw new IllegalStateException("Tree is closed");
+            if (readers.compareAndSet(n, n + 1))
+                return;
+        }
+    }
+
+    private void release() {
+        if (readers.decrementAndGet() == 0)
+            buf.free();
+    }
+
+    /**
+     * Get an N dimensional minimum bounding box of the data stored
+     * in this tree.
+     *
+     * @return the MBR of the whole tree, null if the tree is empty
+     */
+    public MBR getMBR() {
+        acquire();
+        try {
+            if (isEmpty())
+                return null;
+            double[] values = new double[2 * layout.dimensions];
+            long pos = layout.getNodeBoundsPos(0);
+            for (int i = 0; i < values.length; i++, pos += 8)
+                values[i] = buf.getDouble(pos);
+            return new SimpleMBR(values);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Get a 2 dimensional minimum bounding rectangle of the data
+     * stored in this tree.
+     *
+     * @return the MBR of the whole tree, null if the tree is empty
+     */
+    public MBR2D getMBR2D() {
+        acquire();
+        try {
+            if (isEmpty())
+                return null;
+            long pos = layout.getNodeBoundsPos(0);
+            return new SimpleMBR2D(buf.getDouble(pos), buf.getDouble(pos + 16),
+                    buf.getDouble(pos + 8), buf.getDouble(pos + 24));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Get the number of data leafs in this tree.
+     *
+     * @return the total number of leafs in this tree
+     */
+    public int getNumberOfLeaves() {
+        return layout.numEntries;
+    }
+
+    /**
+     * Check if this tree is empty
+     *
+     * @return true if the number of leafs is 0, false otherwise
+     */
+    public boolean isEmpty() {
+        return layout.numEntries == 0;
+    }
+
+    /**
+     * Get the height of this tree.
+     *
+     * @return the total height of this tree
+     */
+    public int getHeight() {
+        return layout.height;
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     List<T> resultNodes) {
+        find(xmin, ymin, xmax, ymax, resultNodes, new AcceptAll<T>());
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @param filter      a secondary filter to apply
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     List<T> resultNodes, NodeFilter<T> filter) {
+        find(new double[]{xmin, xmax, ymin, ymax}, 2, resultNodes, filter);
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param query       the bounds of the query
+     * @param resultNodes the list that will be filled with the result
+     * @throws IllegalArgumentException if max &lt; min for any axis
+     */
+    public void find(MBR query, List<T> resultNodes) {
+        find(query, resultNodes, new AcceptAll<T>());
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param query       the bounds of the query
+     * @param resultNodes the list that will be filled with the result
+     * @param filter      a secondary filter to apply to the found nodes
+     * @throws IllegalArgumentException if max &lt; min for any axis
+     */
+    public void find(MBR query, List<T> resultNodes, NodeFilter<T> filter) {
+        double[] q = new double[2 * layout.dimensions];
+        int p = 0;
+        for (int axis = 0; axis < layout.dimensions; axis++) {
+            q[p++] = query.getMin(axis);
+            q[p++] = query.getMax(axis);
+        }
+        find(q, layout.dimensions, resultNodes, filter);
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and hands
+     * them to the given visitor. If the context has stats they are
+     * updated. The visitor may end the query early by calling
+     * {@link QueryContext#stop}.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     QueryContext ctx, NodeVisitor<T> visitor) {
+        find(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, ctx, visitor);
+    }
+
+    /**
+     * Finds objects that intersect the given rectangle and hands them to
+     * the given visitor, the traversal ends as soon as limit objects have
+     * been found or the visitor calls {@link QueryContext#stop}.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param limit   the maximum number of objects to find
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     int limit, QueryContext ctx, NodeVisitor<T> visitor) {
+        double[] q = ctx.getQuery(4);
+        q[0] = xmin;
+        q[1] = xmax;
+        q[2] = ymin;
+        q[3] = ymax;
+        find(q, 2, limit, ctx, visitor);
+    }
+
+    /**
+     * Finds all objects that intersect each of the given rectangles.
+     * The rectangles are searched one after the other, but the whole
+     * batch counts as one reader of the buffer so a close that happens
+     * during the batch does not cut it short.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param queries xmin, ymin, xmax, ymax for each query
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if the length of queries is not a
+     *                                  multiple of 4 or if xmin &gt; xmax or
+     *                                  ymin &gt; ymax for any query
+     */
+    public void find(double[] queries, QueryContext ctx,
+                     final BatchVisitor<T> visitor) {
+        if (queries.length % 4 != 0)
+            throw new IllegalArgumentException("queries.length: " +
+                    queries.length + " is not a multiple of 4");
+        double[] q = ctx.getQuery(4);
+        for (int p = 0; p < queries.length; p += 4) {
+            q[0] = queries[p];
+            q[1] = queries[p + 2];
+            q[2] = queries[p + 1];
+            q[3] = queries[p + 3];
+            validateQuery(q, 2);
+        }
+        final int[] query = new int[1];
+        NodeVisitor<T> queryVisitor = new NodeVisitor<T>() {
+            public void visit(T t) {
+                visitor.visit(query[0], t);
+            }
+        };
+        acquire();
+        try {
+            for (int p = 0; p < queries.length; p += 4) {
+                query[0] = p / 4;
+                q[0] = queries[p];
+                q[1] = queries[p + 2];
+                q[2] = queries[p + 1];
+                q[3] = queries[p + 3];
+                findInBuffer(q, 2, Integer.MAX_VALUE, ctx, queryVisitor);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    private void find(double[] q, int queryDimensions,
+                      final List<T> resultNodes, final NodeFilter<T> filter) {
+        if (filter == null)
+            throw new NullPointerException("Filter may not be null");
+        find(q, queryDimensions, Integer.MAX_VALUE, new QueryContext(),
+                new NodeVisitor<T>() {
+                    public void visit(T t) {
+                        if (filter.accept(t))
+                            resultNodes.add(t);
+                    }
+                });
+    }
+
+    private void find(double[] q, int queryDimensions, int limit,
+                      QueryContext ctx, NodeVisitor<T> visitor) {
+        validateQuery(q, queryDimensions);
+        acquire();
+        try {
+            findInBuffer(q, queryDimensions, limit, ctx, visitor);
+        } finally {
+            release();
+        }
+    }
+
+    private void findInBuffer(double[] q, int queryDimensions, int limit,
+                              QueryContext ctx, NodeVisitor<T> visitor) {
+        ctx.start(limit);
+        if (isEmpty() || ctx.isStopped())
+            return;
+        QueryStats stats = ctx.getStats();
+        int[] stack = ctx.getInts(layout.height * layout.branchFactor + 1);
+        int top = 0;
+        if (intersects(layout.getNodeBoundsPos(0), q, queryDimensions))
+            stack[top++] = 0;
+        while (top > 0 && !ctx.isStopped()) {
+            int n = stack[--top];
+            int first = getFirstChild(n);
+            int end = first + getChildCount(n);
+            if (n < layout.firstLeafNode) {
+                for (int c = first; c < end; c++) {
+                    if (intersects(layout.getNodeBoundsPos(c), q,
+                            queryDimensions))
+                        stack[top++] = c;
+                }
+            } else {
+                int hits = 0;
+                int e = first;
+                while (e < end) {
+                    if (intersects(layout.getEntryBoundsPos(e++), q,
+                            queryDimensions)) {
+                        hits++;
+                        visitor.visit(getEntry(e - 1));
+                        if (ctx.hit())
+                            break;
+                    }
+                }
+                if (stats != null) {
+                    stats.leavesVisited++;
+                    stats.entriesTested += e - first;
+                    stats.hits += hits;
+                }
+            }
+            if (stats != null)
+                stats.nodesVisited++;
+        }
+    }
+
+    /**
+     * Count the objects that intersect the given rectangle.
+     * Note, this method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin the minimum value of the x coordinate when searching
+     * @param ymin the minimum value of the y coordinate when searching
+     * @param xmax the maximum value of the x coordinate when searching
+     * @param ymax the maximum value of the y coordinate when searching
+     * @return the number of objects that intersect the rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public int count(double xmin, double ymin, double xmax, double ymax) {
+        final int[] ret = new int[1];
+        find(xmin, ymin, xmax, ymax, new QueryContext(), new NodeVisitor<T>() {
+            public void visit(T t) {
+                ret[0]++;
+            }
+        });
+        return ret[0];
+    }
+
+    /**
+     * Get the nearest neighbour of the given point
+     *
+     * @param dc      the DistanceCalculator to use.
+     * @param filter  a NodeFilter that can be used to ignore some leaf nodes.
+     * @param maxHits the maximum number of entries to find.
+     * @param p       the point to find the nearest neighbour to.
+     * @return A List of DistanceResult with up to maxHits results.
+     * Will return an empty list if this tree is empty.
+     */
+    public List<DistanceResult<T>> nearestNeighbour(DistanceCalculator<T> dc,
+                                                    NodeFilter<T> filter,
+                                                    int maxHits,
+                                                    PointND p) {
+        acquire();
+        try {
+            if (isEmpty() || maxHits <= 0)
+                return Collections.emptyList();
+            return nearestNeighbourInBuffer(dc, filter, maxHits, p);
+        } finally {
+            release();
+        }
+    }
+
+    private List<DistanceResult<T>> nearestNeighbourInBuffer(
+            DistanceCalculator<T> dc, NodeFilter<T> filter, int maxHits,
+            PointND p) {
+        DoubleIntHeap queue = new DoubleIntHeap(
+                layout.height * layout.branchFactor);
+        // the results found so far, a max heap by using negated distances
+        DoubleIntHeap found = new DoubleIntHeap(maxHits + 1);
+        queue.add(minDist(layout.getNodeBoundsPos(0), p), 0);
+        while (!queue.isEmpty()) {
+            double minDist = queue.peekKey();
+            int n = queue.peekValue();
+            queue.remove();
+            if (found.size() == maxHits && minDist > -found.peekKey())
+                break;
+            int first = getFirstChild(n);
+            int end = first + getChildCount(n);
+            if (n < layout.firstLeafNode) {
+                for (int c = first; c < end; c++) {
+                    double d = minDist(layout.getNodeBoundsPos(c), p);
+                    if (found.size() < maxHits || d <= -found.peekKey())
+                        queue.add(d, c);
+                }
+            } else {
+                for (int e = first; e < end; e++) {
+                    T t = getEntry(e);
+                    if (!filter.accept(t))
+                        continue;
+                    double dist = dc.distanceTo(t, p);
+                    if (found.size() < maxHits) {
+                        found.add(-dist, e);
+                    } else if (dist < -found.peekKey()) {
+                        found.remove();
+                        found.add(-dist, e);
+                    }
+                }
+            }
+        }
+        // the heap gives the farthest result first
+        List<DistanceResult<T>> ret = new ArrayList<>(found.size());
+        while (!found.isEmpty()) {
+            ret.add(new DistanceResult<>(getEntry(found.peekValue()),
+                    -found.peekKey()));
+            found.remove();
+        }
+        Collections.reverse(ret);
+        return ret;
+    }
+
+    private int getFirstChild(int node) {
+        return buf.getInt(layout.firstChildPos + 4L * node);
+    }
+
+    private int getChildCount(int node) {
+        return buf.getInt(layout.childCountPos + 4L * node);
+    }
+
+    private T getEntry(int entry) {
+        return data.get(buf.getInt(layout.ordinalsPos + 4L * entry));
+    }
+
+    private boolean intersects(long pos, double[] q, int queryDimensions) {
+        for (int i = 0; i < 2 * queryDimensions; i += 2, pos += 16) {
+            if (buf.getDouble(pos + 8) < q[i] || buf.getDouble(pos) > q[i + 1])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Calculate the MINDIST between the bounds at the given position and
+     * the given point, the same way as {@link MinDist}.
+     */
+    private double minDist(long pos, PointND p) {
+        double res = 0;
+        for (int i = 0; i < p.getDimensions(); i++, pos += 16) {
+            double o = p.getOrd(i);
+            double min = buf.getDouble(pos);
+            double max = buf.getDouble(pos + 8);
+            double dr = o < min ? o - min : (o > max ? o - max : 0);
+            res += dr * dr;
+        }
+        return res;
+    }
+
+    private void validateQuery(double[] q, int queryDimensions) {
+        for (int axis = 0; axis < queryDimensions; axis++) {
+            double min = q[2 * axis];
+            double max = q[2 * axis + 1];
+            if (max < min)
+                throw new IllegalArgumentException("max: " + max +
+                        " < min: " + min +
+                        ", axis: " + axis);
+        }
+    }
+}
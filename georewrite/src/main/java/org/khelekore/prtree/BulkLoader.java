@@ -0,0 +1,30 @@
+package org.khelekore.prtree;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A strategy that groups elements into nodes when a tree is bulk loaded.
+ * <p>
+ * <p>The tree calls the loader once for the data, to create the leaf
+ * nodes, and then once for each level of nodes until all nodes fit in
+ * the root. A loader only decides which elements go together, the nodes
+ * are created by the given factory. See {@link BulkLoaders} for the
+ * available strategies.
+ */
+public interface BulkLoader {
+    /**
+     * Group the elements into nodes of at most branchFactor elements each.
+     *
+     * @param elements     the elements to group
+     * @param converter    the MBRConverter for the elements
+     * @param branchFactor the maximum number of elements in a node
+     * @param nf           the factory that creates the nodes
+     * @param nodes        the list to add the created nodes to
+     * @param <T>          the element type
+     * @param <N>          the node type
+     */
+    <T, N> void buildNodes(Collection<? extends T> elements,
+                           MBRConverter<T> converter, int branchFactor,
+                           NodeFactory<N> nf, List<N> nodes);
+}
@@ -0,0 +1,91 @@
+package org.khelekore.prtree;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The bulk loading strategies that come with the tree.
+ * <p>
+ * <p>The priority R-tree loader gives the best worst case query
+ * performance, also for skewed data and extreme rectangles. The Hilbert
+ * and STR loaders only sort the data and pack it in order, so they build
+ * a lot faster and are often as fast to query for uniformly spread data,
+ * points in particular.
+ */
+public class BulkLoaders {
+
+    /**
+     * Do not instantiate
+     */
+    private BulkLoaders() {
+        // empty
+    }
+
+    /**
+     * Get the priority R-tree loader, this is the loader used by
+     * {@link PRTree#load(java.util.Collection)}.
+     *
+     * @return the priority R-tree loader
+     */
+    public static BulkLoader priority() {
+        return new PriorityBulkLoader(null, false);
+    }
+
+    /**
+     * Get the priority R-tree loader that uses the threads of the given
+     * pool, see {@link PRTree#load(java.util.Collection, ForkJoinPool)}.
+     *
+     * @param pool the pool that runs the parallel work
+     * @return the parallel priority R-tree loader
+     */
+    public static BulkLoader priority(ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException("Pool may not be null");
+        return new PriorityBulkLoader(pool, false);
+    }
+
+    /**
+     * Get the low memory priority R-tree loader, see
+     * {@link PRTree#loadLowMemory(java.util.Collection)}.
+     *
+     * @return the low memory priority R-tree loader
+     */
+    public static BulkLoader priorityLowMemory() {
+        return new PriorityBulkLoader(null, true);
+    }
+
+    /**
+     * Get the low memory priority R-tree loader that uses the threads of
+     * the given pool, see
+     * {@link PRTree#loadLowMemory(java.util.Collection, ForkJoinPool)}.
+     *
+     * @param pool the pool that runs the parallel work
+     * @return the parallel low memory priority R-tree loader
+     */
+    public static BulkLoader priorityLowMemory(ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException("Pool may not be null");
+        return new PriorityBulkLoader(pool, true);
+    }
+
+    /**
+     * Get a loader that sorts the elements by the Hilbert curve value of
+     * the center of their first two axes and packs them in that order.
+     *
+     * @return the Hilbert curve loader
+     */
+    public static BulkLoader hilbert() {
+        return new HilbertBulkLoader();
+    }
+
+    /**
+     * Get a Sort-Tile-Recursive loader, the elements are sorted by the
+     * center of the first axis and cut into slabs, each slab is sorted by
+     * the next axis and cut again until the last axis, that is packed in
+     * order.
+     *
+     * @return the Sort-Tile-Recursive loader
+     */
+    public static BulkLoader str() {
+        return new STRBulkLoader();
+    }
+}
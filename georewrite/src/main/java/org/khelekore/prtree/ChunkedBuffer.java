@@ -0,0 +1,146 @@
+package org.khelekore.prtree;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A view of a large memory area made of ByteBuffers of at most 1 GB each,
+ * so that more than 2 GB can be addressed with a long position.
+ * <p>
+ * <p>Only absolute reads and writes are used so one instance can be read by
+ * several threads at once. Values are little endian and must be aligned to
+ * their size, so a value never crosses two chunks.
+ */
+class ChunkedBuffer {
+    static final int CHUNK_SHIFT = 30;
+    static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ByteBuffer[] chunks;
+    private final long size;
+
+    ChunkedBuffer(ByteBuffer[] chunks, long size) {
+        this.chunks = chunks;
+        this.size = size;
+        for (ByteBuffer b : chunks)
+            b.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Map a part of a file read only.
+     *
+     * @param channel the file to map
+     * @param offset  where in the file the mapped area starts
+     * @param size    the number of bytes to map
+     * @return the mapped area
+     * @throws IOException if the file can not be mapped
+     */
+    static ChunkedBuffer map(FileChannel channel, long offset, long size)
+            throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[numChunks(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = i * CHUNK_SIZE;
+            long len = Math.min(CHUNK_SIZE, size - start);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    offset + start, len);
+        }
+        return new ChunkedBuffer(chunks, size);
+    }
+
+    /**
+     * Allocate direct memory, outside of the java heap.
+     *
+     * @param size the number of bytes to allocate
+     * @return the allocated area, filled with zeros
+     */
+    static ChunkedBuffer allocateDirect(long size) {
+        ByteBuffer[] chunks = new ByteBuffer[numChunks(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = i * CHUNK_SIZE;
+            chunks[i] = ByteBuffer.allocateDirect(
+                    (int) Math.min(CHUNK_SIZE, size - start));
+        }
+        return new ChunkedBuffer(chunks, size);
+    }
+
+    static int numChunks(long size) {
+        return (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    }
+
+    ByteBuffer[] getChunks() {
+        return chunks;
+    }
+
+    long size() {
+        return size;
+    }
+
+    double getDouble(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)]
+                .getDouble((int) (pos & CHUNK_MASK));
+    }
+
+    int getInt(long pos) {
+        return chunks[(int) (pos >>> CHUNK_SHIFT)]
+                .getInt((int) (pos & CHUNK_MASK));
+    }
+
+    void putDouble(long pos, double d) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)]
+                .putDouble((int) (pos & CHUNK_MASK), d);
+    }
+
+    void putInt(long pos, int i) {
+        chunks[(int) (pos >>> CHUNK_SHIFT)]
+                .putInt((int) (pos & CHUNK_MASK), i);
+    }
+
+    /**
+     * Free the direct or mapped memory of the chunks right away instead of
+     * when the buffers are garbage collected. The chunks are dropped, so a
+     * later read fails with a NullPointerException. Reading while this
+     * method runs may crash the JVM, the caller has to make sure that
+     * nothing reads the buffer any more, BufferPRTree only frees it once
+     * its last reader is done.
+     */
+    void free() {
+        for (int i = 0; i < chunks.length; i++) {
+            ByteBuffer b = chunks[i];
+            chunks[i] = null;
+            if (b != null && b.isDirect())
+                clean(b);
+        }
+    }
+
+    /**
+     * Run the cleaner of a direct buffer, if it can not be done the memory
+     * is freed when the buffer is garbage collected.
+     */
+    private static void clean(ByteBuffer b) {
+        try {
+            // java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            Method invokeCleaner =
+                    unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(f.get(null), b);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall through to the java 8 way
+        }
+        try {
+            Method cleanerMethod = b.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(b);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A PRTree that supports insert and remove.
+ * <p>
+ * <p>The bulk loaded base tree is never modified. Inserted objects are kept
+ * in a small delta array and removed objects of the base tree are hidden by
+ * a tombstone set. Queries search the base tree, skip the tombstones and then
+ * scan the delta. When the delta and the tombstones together reach the merge
+ * threshold a new base tree is bulk loaded on the given executor and swapped
+ * in.
+ * <p>
+ * <p>All state is kept in one immutable snapshot that is replaced on every
+ * write, so queries never block and never see a half done write. Writes are
+ * serialized and copy the delta, which is cheap as long as the merge
+ * threshold is small compared to the size of the tree.
+ * <p>
+ * <p>Objects are compared with equals when removing, so the data type should
+ * implement equals and hashCode if removes are done with other instances
+ * than the inserted ones. A remove hides exactly one matching object, the
+ * tombstones hold the instances of the base tree by identity, so equal
+ * objects that were inserted several times are removed one at a time.
+ * <p>
+ * <p>A merge that fails is logged and the tree keeps working on the old
+ * base tree, the merge is only tried again after another merge threshold
+ * of changes.
+ *
+ * @param <T> the data type stored in the tree
+ */
+public class DeltaPRTree<T> {
+    private static final Logger logger =
+            Logger.getLogger(DeltaPRTree.class.getName());
+
+    private final MBRConverter<T> converter;
+    private final int branchFactor;
+    private final int mergeThreshold;
+    private final Executor executor;
+
+    private volatile Snapshot<T> snapshot;
+    /**
+     * true while a merge is running, guarded by this
+     */
+    private boolean merging;
+    /**
+     * the number of changes that starts the next merge, guarded by this
+     */
+    private int mergeAt;
+
+    private static class Snapshot<T> {
+        private final PRTree<T> base;
+        private final Object[] delta;
+        private final Set<T> tombstones;
+
+        public Snapshot(PRTree<T> base, Object[] delta, Set<T> tombstones) {
+            this.base = base;
+            this.delta = delta;
+            this.tombstones = tombstones;
+        }
+
+        private int getNumberOfChanges() {
+            return delta.length + tombstones.size();
+        }
+    }
+
+    /**
+     * Hides the tombstones from the visitor of the caller and counts the
+     * visited objects. One is kept in each QueryContext and only refers
+     * to a snapshot while a query runs.
+     */
+    private static class TombstoneFilter<T> implements NodeVisitor<T> {
+        private Set<T> tombstones;
+        private NodeVisitor<T> visitor;
+        private QueryContext ctx;
+        private int limit;
+        private int found;
+
+        @SuppressWarnings("unchecked")
+        private static <T> TombstoneFilter<T> get(QueryContext ctx) {
+            Object w = ctx.getWrapper();
+            if (w instanceof TombstoneFilter)
+                return (TombstoneFilter<T>) w;
+            TombstoneFilter<T> f = new TombstoneFilter<>();
+            ctx.setWrapper(f);
+            return f;
+        }
+
+        private void start(Set<T> tombstones, NodeVisitor<T> visitor,
+                           QueryContext ctx, int limit) {
+            this.tombstones = tombstones;
+            this.visitor = visitor;
+            this.ctx = ctx;
+            this.limit = limit;
+            found = 0;
+        }
+
+        private void clear() {
+            tombstones = null;
+            visitor = null;
+            ctx = null;
+        }
+
+        public void visit(T t) {
+            if (tombstones.contains(t))
+                return;
+            visitor.visit(t);
+            if (++found >= limit)
+                ctx.stop();
+        }
+    }
+
+    /**
+     * Create a new DeltaPRTree and bulk load the given data as the first
+     * base tree.
+     *
+     * @param converter      the MBRConverter to use for this tree
+     * @param branchFactor   the number of child nodes for each internal node.
+     * @param data           the initial data of the tree
+     * @param mergeThreshold the number of inserts and removes that triggers
+     *                       a rebuild of the base tree
+     * @param executor       the executor that runs the rebuilds
+     */
+    public DeltaPRTree(MBRConverter<T> converter, int branchFactor,
+                       Collection<? extends T> data, int mergeThreshold,
+                       Executor executor) {
+        if (mergeThreshold < 1)
+            throw new IllegalArgumentException("mergeThreshold: " +
+                    mergeThreshold + " < 1");
+        this.converter = converter;
+        this.branchFactor = branchFactor;
+        this.mergeThreshold = mergeThreshold;
+        this.executor = executor;
+        this.mergeAt = mergeThreshold;
+        PRTree<T> base = new PRTree<>(converter, branchFactor);
+        base.load(data);
+        snapshot = new Snapshot<>(base, new Object[0],
+                Collections.<T>emptySet());
+    }
+
+    /**
+     * Insert an object into the tree.
+     *
+     * @param t the object to insert
+     */
+    public synchronized void insert(T t) {
+        if (t == null)
+            throw new NullPointerException("Can not insert null");
+        Snapshot<T> s = snapshot;
+        Object[] delta = Arrays.copyOf(s.delta, s.delta.length + 1);
+        delta[s.delta.length] = t;
+        setSnapshot(new Snapshot<>(s.base, delta, s.tombstones));
+    }
+
+    /**
+     * Remove an object from the tree.
+     *
+     * @param t the object to remove
+     * @return true if the object was found in the tree
+     */
+    public synchronized boolean remove(T t) {
+        Snapshot<T> s = snapshot;
+        for (int i = 0; i < s.delta.length; i++) {
+            if (t.equals(s.delta[i])) {
+                Object[] delta = new Object[s.delta.length - 1];
+                System.arraycopy(s.delta, 0, delta, 0, i);
+                System.arraycopy(s.delta, i + 1, delta, i, delta.length - i);
+                setSnapshot(new Snapshot<>(s.base, delta, s.tombstones));
+                return true;
+            }
+        }
+        T found = findLive(s, t);
+        if (found == null)
+            return false;
+        Set<T> tombstones = newTombstones();
+        tombstones.addAll(s.tombstones);
+        tombstones.add(found);
+        setSnapshot(new Snapshot<>(s.base, s.delta,
+                Collections.unmodifiableSet(tombstones)));
+        return true;
+    }
+
+    /**
+     * Find an instance of the base tree that is equal to t and not yet
+     * removed.
+     */
+    private T findLive(Snapshot<T> s, T t) {
+        double[] values = new double[2 * converter.getDimensions()];
+        for (int axis = 0, p = 0; axis < converter.getDimensions(); axis++) {
+            values[p++] = converter.getMin(axis, t);
+            values[p++] = converter.getMax(axis, t);
+        }
+        for (T found : s.base.find(new SimpleMBR(values))) {
+            if (t.equals(found) && !s.tombstones.contains(found))
+                return found;
+        }
+        return null;
+    }
+
+    private static <T> Set<T> newTombstones() {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    }
+
+    /**
+     * Set a new snapshot and start a merge if there are enough changes.
+     * Must be called while holding the lock.
+     */
+    private void setSnapshot(final Snapshot<T> s) {
+        snapshot = s;
+        if (merging || s.getNumberOfChanges() < mergeAt)
+            return;
+        merging = true;
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    merge(s);
+                }
+            });
+        } catch (RuntimeException e) {
+            merging = false;
+            throw e;
+        }
+    }
+
+    /**
+     * Bulk load a new base tree from the given snapshot and swap it in,
+     * keeping the changes that were made while the new tree was built.
+     */
+    private void merge(Snapshot<T> from) {
+        PRTree<T> base;
+        try {
+            List<T> data = new ArrayList<>(from.base.getNumberOfLeaves() +
+                    from.delta.length);
+            addAll(from.base.getRoot(), from.tombstones, data);
+            for (Object o : from.delta)
+                data.add(cast(o));
+            base = new PRTree<>(converter, branchFactor);
+            base.load(data);
+        } catch (RuntimeException | Error e) {
+            logger.log(Level.SEVERE, "Failed to merge " +
+                    from.getNumberOfChanges() + " changes", e);
+            synchronized (this) {
+                merging = false;
+                // do not retry the same merge on every write
+                mergeAt = from.getNumberOfChanges() + mergeThreshold;
+            }
+            if (e instanceof Error)
+                throw (Error) e;
+            return;
+        }
+        synchronized (this) {
+            merging = false;
+            mergeAt = mergeThreshold;
+            Snapshot<T> current = snapshot;
+            Map<Object, Boolean> merged = new IdentityHashMap<>();
+            for (Object o : from.delta)
+                merged.put(o, Boolean.TRUE);
+            List<Object> delta = new ArrayList<>();
+            for (Object o : current.delta) {
+                if (merged.remove(o) == null)
+                    delta.add(o);
+            }
+            Set<T> tombstones = newTombstones();
+            for (T t : current.tombstones) {
+                if (!from.tombstones.contains(t))
+                    tombstones.add(t);
+            }
+            // merged objects that were removed from the delta while the
+            // new tree was built are now in the base tree
+            for (Object o : merged.keySet())
+                tombstones.add(cast(o));
+            try {
+                setSnapshot(new Snapshot<>(base, delta.toArray(),
+                        Collections.unmodifiableSet(tombstones)));
+            } catch (RuntimeException e) {
+                // the new base is in place, only the next merge failed
+                logger.log(Level.WARNING, "Failed to start the next merge", e);
+            }
+        }
+    }
+
+    private void addAll(Node<T> n, Set<T> skip, List<T> data) {
+        if (n instanceof InternalNode) {
+            InternalNode<T> in = (InternalNode<T>) n;
+            for (int i = 0, s = in.size(); i < s; i++)
+                addAll(in.get(i), skip, data);
+        } else {
+            LeafNode<T> ln = (LeafNode<T>) n;
+            for (int i = 0, s = ln.size(); i < s; i++) {
+                T t = ln.get(i);
+                if (!skip.contains(t))
+                    data.add(t);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object o) {
+        return (T) o;
+    }
+
+    /**
+     * Get the number of inserted objects and tombstones that are not yet
+     * merged into the base tree.
+     *
+     * @return the number of changes since the last merge
+     */
+    public int getNumberOfChanges() {
+        return snapshot.getNumberOfChanges();
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     List<T> resultNodes) {
+        Snapshot<T> s = snapshot;
+        int from = resultNodes.size();
+        s.base.find(xmin, ymin, xmax, ymax, resultNodes);
+        if (!s.tombstones.isEmpty()) {
+            int to = from;
+            for (int i = from, size = resultNodes.size(); i < size; i++) {
+                T t = resultNodes.get(i);
+                if (!s.tombstones.contains(t))
+                    resultNodes.set(to++, t);
+            }
+            resultNodes.subList(to, resultNodes.size()).clear();
+        }
+        for (Object o : s.delta) {
+            T t = cast(o);
+            if (intersects(t, xmin, ymin, xmax, ymax))
+                resultNodes.add(t);
+        }
+    }
+
+    private boolean intersects(T t, double xmin, double ymin,
+                               double xmax, double ymax) {
+        return !(converter.getMax(0, t) < xmin ||
+                converter.getMin(0, t) > xmax ||
+                converter.getMax(1, t) < ymin ||
+                converter.getMin(1, t) > ymax);
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and hands
+     * them to the given visitor. The visitor may end the query early by
+     * calling {@link QueryContext#stop}.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     QueryContext ctx, NodeVisitor<T> visitor) {
+        find(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, ctx, visitor);
+    }
+
+    /**
+     * Finds objects that intersect the given rectangle and hands them to
+     * the given visitor, the query ends as soon as limit objects have
+     * been found or the visitor calls {@link QueryContext#stop}. The base
+     * tree is searched before the delta.
+     * <p>
+     * <p>The tombstones are filtered by a visitor that is kept in the
+     * context, so like the find of PRTree this does not allocate anything.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param limit   the maximum number of objects to find
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     int limit, QueryContext ctx, NodeVisitor<T> visitor) {
+        Snapshot<T> s = snapshot;
+        // the base tree counts hidden objects as hits, so let it find
+        // up to one more per tombstone and stop on the real count here
+        int baseLimit = limit + s.tombstones.size();
+        if (baseLimit < limit)
+            baseLimit = Integer.MAX_VALUE;
+        TombstoneFilter<T> filter = TombstoneFilter.get(ctx);
+        filter.start(s.tombstones, visitor, ctx, limit);
+        int found;
+        try {
+            s.base.find(xmin, ymin, xmax, ymax, baseLimit, ctx, filter);
+        } finally {
+            found = filter.found;
+            filter.clear();
+        }
+        if (ctx.isStopped())
+            return;
+        for (Object o : s.delta) {
+            T t = cast(o);
+            if (intersects(t, xmin, ymin, xmax, ymax)) {
+                visitor.visit(t);
+                if (++found >= limit)
+                    ctx.stop();
+                if (ctx.isStopped())
+                    return;
+            }
+        }
+    }
+}
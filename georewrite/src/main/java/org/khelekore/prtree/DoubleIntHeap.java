@@ -0,0 +1,88 @@
+package org.khelekore.prtree;
+
+import java.util.Arrays;
+
+/**
+ * A binary min heap of int values ordered by a double key, kept in
+ * primitive arrays so that adding and removing does not allocate
+ * (except when the heap has to grow).
+ */
+class DoubleIntHeap {
+    private double[] keys;
+    private int[] values;
+    private int size;
+
+    public DoubleIntHeap(int initialCapacity) {
+        keys = new double[Math.max(initialCapacity, 2)];
+        values = new int[keys.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(double key, int value) {
+        if (size == keys.length) {
+            int n = size * 2;
+            keys = Arrays.copyOf(keys, n);
+            values = Arrays.copyOf(values, n);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key)
+                break;
+            keys[i] = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * @return the smallest key, undefined if the heap is empty
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * @return the value of the smallest key, undefined if the heap is empty
+     */
+    public int peekValue() {
+        return values[0];
+    }
+
+    /**
+     * Remove the entry with the smallest key.
+     */
+    public void remove() {
+        size--;
+        double key = keys[size];
+        int value = values[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child])
+                child = right;
+            if (key <= keys[child])
+                break;
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+}
@@ -0,0 +1,88 @@
+package org.khelekore.prtree;
+
+import java.util.Arrays;
+
+/**
+ * A binary min heap of objects ordered by a double key. The keys are kept
+ * in a primitive array so that they are computed once, when an object is
+ * added, and never again while the heap is reordered.
+ *
+ * @param <V> the value type
+ */
+class DoubleObjectHeap<V> {
+    private double[] keys;
+    private Object[] values;
+    private int size;
+
+    public DoubleObjectHeap(int initialCapacity) {
+        keys = new double[Math.max(initialCapacity, 2)];
+        values = new Object[keys.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(double key, V value) {
+        if (size == keys.length) {
+            int n = size * 2;
+            keys = Arrays.copyOf(keys, n);
+            values = Arrays.copyOf(values, n);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key)
+                break;
+            keys[i] = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * @return the smallest key, undefined if the heap is empty
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * @return the value of the smallest key, undefined if the heap is empty
+     */
+    @SuppressWarnings("unchecked")
+    public V peekValue() {
+        return (V) values[0];
+    }
+
+    /**
+     * Remove the entry with the smallest key.
+     */
+    public void remove() {
+        size--;
+        double key = keys[size];
+        Object value = values[size];
+        values[size] = null;
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child])
+                child = right;
+            if (key <= keys[child])
+                break;
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+}
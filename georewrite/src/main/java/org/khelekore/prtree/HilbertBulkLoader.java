@@ -0,0 +1,84 @@
+package org.khelekore.prtree;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Packs elements in the order of the Hilbert curve value of their center.
+ * Only the first two axes are used for the ordering.
+ */
+class HilbertBulkLoader implements BulkLoader {
+    /**
+     * the curve is computed on a grid of 2^ORDER by 2^ORDER cells
+     */
+    private static final int ORDER = 16;
+    private static final int MAX_CELL = (1 << ORDER) - 1;
+
+    public <T, N> void buildNodes(Collection<? extends T> elements,
+                                  MBRConverter<T> converter, int branchFactor,
+                                  NodeFactory<N> nf, List<N> nodes) {
+        Object[] es = elements.toArray();
+        int n = es.length;
+        if (n == 0)
+            return;
+        double[] cx = new double[n];
+        double[] cy = new double[n];
+        double xmin = Double.POSITIVE_INFINITY;
+        double ymin = Double.POSITIVE_INFINITY;
+        double xmax = Double.NEGATIVE_INFINITY;
+        double ymax = Double.NEGATIVE_INFINITY;
+        boolean twoAxes = converter.getDimensions() > 1;
+        for (int i = 0; i < n; i++) {
+            @SuppressWarnings("unchecked")
+            T t = (T) es[i];
+            cx[i] = (converter.getMin(0, t) + converter.getMax(0, t)) / 2;
+            cy[i] = twoAxes ?
+                    (converter.getMin(1, t) + converter.getMax(1, t)) / 2 : 0;
+            xmin = Math.min(xmin, cx[i]);
+            ymin = Math.min(ymin, cy[i]);
+            xmax = Math.max(xmax, cx[i]);
+            ymax = Math.max(ymax, cy[i]);
+        }
+        double sx = xmax > xmin ? MAX_CELL / (xmax - xmin) : 0;
+        double sy = ymax > ymin ? MAX_CELL / (ymax - ymin) : 0;
+        // the curve value in the high bits and the ordinal in the low bits,
+        // so one primitive sort gives a stable order
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (int) ((cx[i] - xmin) * sx);
+            int y = (int) ((cy[i] - ymin) * sy);
+            keys[i] = (hilbert(x, y) << 31) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < n; i += branchFactor) {
+            Object[] data = new Object[Math.min(branchFactor, n - i)];
+            for (int j = 0; j < data.length; j++)
+                data[j] = es[(int) (keys[i + j] & Integer.MAX_VALUE)];
+            nodes.add(nf.create(data));
+        }
+    }
+
+    /**
+     * Get the distance along the Hilbert curve for the given cell.
+     */
+    static long hilbert(int x, int y) {
+        long d = 0;
+        for (int s = 1 << (ORDER - 1); s > 0; s >>>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = MAX_CELL - x;
+                    y = MAX_CELL - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+}
@@ -1,19 +1,24 @@
 package org.khelekore.prtree;
 
 import java.util.List;
-import java.util.PriorityQueue;
 
 class InternalNode<T> extends NodeBase<Node<T>, T> {
-    public InternalNode(Object[] data) {
-        super(data);
+    private final int entryCount;
+
+    /**
+     * @param data      the child nodes, their MBRs are already computed
+     * @param converter the MBR converter to use for the actual objects
+     */
+    public InternalNode(Object[] data, MBRConverter<T> converter) {
+        super(data, getBounds(data, new NodeMBRConverter<>(converter)));
+        int c = 0;
+        for (Object o : data)
+            c += ((Node<?>) o).getEntryCount();
+        entryCount = c;
     }
 
-    @Override
-    public MBR computeMBR(MBRConverter<T> converter) {
-        MBR ret = null;
-        for (int i = 0, s = size(); i < s; i++)
-            ret = getUnion(ret, get(i).getMBR(converter));
-        return ret;
+    public int getEntryCount() {
+        return entryCount;
     }
 
     public void expand(MBR mbr, NodeFilter<T> filter,
@@ -35,21 +40,91 @@ class InternalNode<T> extends NodeBase<Node<T>, T> {
         }
     }
 
+    public int count(MBR mbr, MBRConverter<T> converter) {
+        int ret = 0;
+        for (int i = 0, s = size(); i < s; i++) {
+            Node<T> n = get(i);
+            MBR m = n.getMBR(converter);
+            if (contains(mbr, m))
+                ret += n.getEntryCount();
+            else if (mbr.intersects(m))
+                ret += n.count(mbr, converter);
+        }
+        return ret;
+    }
+
+    private static boolean contains(MBR outer, MBR inner) {
+        for (int i = 0, d = outer.getDimensions(); i < d; i++) {
+            if (inner.getMin(i) < outer.getMin(i) ||
+                    inner.getMax(i) > outer.getMax(i))
+                return false;
+        }
+        return true;
+    }
+
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     MBRConverter<T> converter, QueryContext ctx,
+                     NodeVisitor<T> visitor) {
+        QueryStats stats = ctx.getStats();
+        if (stats != null)
+            stats.nodesVisited++;
+        for (int i = 0, s = size(); i < s; i++) {
+            Node<T> n = get(i);
+            MBR m = n.getMBR(converter);
+            if (!(m.getMax(0) < xmin || m.getMin(0) > xmax ||
+                    m.getMax(1) < ymin || m.getMin(1) > ymax))
+                ctx.push(n);
+        }
+    }
+
+    public void findWithinDistance(DistanceCalculator<T> dc,
+                                   NodeFilter<T> filter, PointND p,
+                                   double maxDist2,
+                                   MBRConverter<T> converter,
+                                   QueryContext ctx, NodeVisitor<T> visitor) {
+        QueryStats stats = ctx.getStats();
+        if (stats != null)
+            stats.nodesVisited++;
+        for (int i = 0, s = size(); i < s; i++) {
+            Node<T> n = get(i);
+            if (MinDist.get(n.getMBR(converter), p) <= maxDist2)
+                ctx.push(n);
+        }
+    }
+
+    public void findBatch(double[] queries, int[] active, int from, int count,
+                          MBRConverter<T> converter, BatchVisitor<T> visitor) {
+        int childFrom = from + count;
+        for (int i = 0, s = size(); i < s; i++) {
+            Node<T> n = get(i);
+            MBR m = n.getMBR(converter);
+            double xmin = m.getMin(0);
+            double ymin = m.getMin(1);
+            double xmax = m.getMax(0);
+            double ymax = m.getMax(1);
+            int childCount = 0;
+            for (int j = from, end = from + count; j < end; j++) {
+                int q = active[j];
+                int p = 4 * q;
+                if (!(xmax < queries[p] || xmin > queries[p + 2] ||
+                        ymax < queries[p + 1] || ymin > queries[p + 3]))
+                    active[childFrom + childCount++] = q;
+            }
+            if (childCount > 0)
+                n.findBatch(queries, active, childFrom, childCount,
+                        converter, visitor);
+        }
+    }
+
     public void nnExpand(DistanceCalculator<T> dc,
                          NodeFilter<T> filter,
-                         List<DistanceResult<T>> drs,
-                         int maxHits,
-                         PriorityQueue<Node<T>> queue,
-                         MinDistComparator<T, Node<T>> mdc) {
-        int s = size();
-        for (int i = 0; i < s; i++) {
+                         PointND p,
+                         MBRConverter<T> converter,
+                         DoubleObjectHeap<Node<T>> nodes,
+                         DoubleObjectHeap<T> entries) {
+        for (int i = 0, s = size(); i < s; i++) {
             Node<T> n = get(i);
-            MBR mbr = n.getMBR(mdc.converter);
-            double minDist = MinDist.get(mbr, mdc.p);
-            int t = drs.size();
-            // drs is sorted so we can check only the last entry
-            if (t < maxHits || minDist <= drs.get(t - 1).getDistance())
-                queue.add(n);
+            nodes.add(MinDist.get(n.getMBR(converter), p), n);
         }
     }
 }
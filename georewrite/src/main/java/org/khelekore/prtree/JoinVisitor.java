@@ -0,0 +1,17 @@
+package org.khelekore.prtree;
+
+/**
+ * A callback that receives the candidate pairs found by a spatial join.
+ *
+ * @param <T> the data type of the first tree
+ * @param <S> the data type of the second tree
+ */
+public interface JoinVisitor<T, S> {
+    /**
+     * Called once for every pair of objects whose bounds intersect.
+     *
+     * @param t the object from the first tree
+     * @param s the object from the second tree
+     */
+    void visit(T t, S s);
+}
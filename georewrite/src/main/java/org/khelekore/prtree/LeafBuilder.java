@@ -6,32 +6,81 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A builder of internal nodes used during bulk loading of a PR-Tree.
  * A PR-Tree is build by building a pseudo R-Tree and grabbing the
  * leaf nodes (and then repeating until you have just one root node).
  * This class creates the leaf nodes without building the full pseudo tree.
+ * <p>
+ * <p>When created with a ForkJoinPool the sorts are done with parallel
+ * sorts and independent partitions are expanded in parallel. The nodes
+ * created are the same as the ones created by the sequential builder and
+ * they are returned in the same order.
+ * <p>
+ * <p>In low memory mode each sort order is kept as an int permutation of
+ * the element ordinals and the partition owner of each element is kept
+ * in one shared int array, instead of one NodeUsage object per element
+ * and one list of them per sort order. The created nodes are the same.
  */
 class LeafBuilder {
 
+    /**
+     * partitions smaller than this are expanded in the current task
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
     private final int dimensions;
     private final int branchFactor;
+    private final ForkJoinPool pool;
+    private final boolean lowMemory;
 
     public LeafBuilder(int dimensions, int branchFactor) {
+        this(dimensions, branchFactor, null, false);
+    }
+
+    public LeafBuilder(int dimensions, int branchFactor, ForkJoinPool pool) {
+        this(dimensions, branchFactor, pool, false);
+    }
+
+    public LeafBuilder(int dimensions, int branchFactor, ForkJoinPool pool,
+                       boolean lowMemory) {
         this.dimensions = dimensions;
         this.branchFactor = branchFactor;
+        this.pool = pool;
+        this.lowMemory = lowMemory;
     }
 
     public <T, N> void buildLeafs(Collection<? extends T> ls,
                                   NodeComparators<T> comparators,
                                   NodeFactory<N> nf,
                                   List<N> leafNodes) {
+        Circle<Noder<N>> getters;
+        if (lowMemory)
+            getters = getOrdinalGetters(ls, comparators);
+        else if (pool != null)
+            getters = getParallelGetters(ls, comparators);
+        else
+            getters = getUsageGetters(ls, comparators);
+
+        if (pool != null) {
+            Partition p = new Partition(1, ls.size(), new int[2 * dimensions]);
+            leafNodes.addAll(pool.invoke(new PartitionTask<>(p, getters, nf)));
+        } else {
+            getLeafs(1, ls.size(), getters, nf, leafNodes);
+        }
+    }
+
+    private <T, N> Circle<Noder<N>> getUsageGetters(
+            Collection<? extends T> ls, NodeComparators<T> comparators) {
         List<NodeUsage<T>> nodes = new ArrayList<>(ls.size());
         for (T t : ls)
             nodes.add(new NodeUsage<>(t, 1));
 
-        Circle<Noder<T, N>> getters = new Circle<>(dimensions * 2);
+        Circle<Noder<N>> getters = new Circle<>(dimensions * 2);
 
         for (int i = 0; i < dimensions; i++)
             addGetterAndSplitter(nodes, comparators.getMinComparator(i),
@@ -40,45 +89,174 @@ class LeafBuilder {
         for (int i = 0; i < dimensions; i++)
             addGetterAndSplitter(nodes, comparators.getMaxComparator(i),
                     getters);
+        return getters;
+    }
+
+    private <T, N> Circle<Noder<N>> getParallelGetters(
+            Collection<? extends T> ls, NodeComparators<T> comparators) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        NodeUsage<T>[] nodes = new NodeUsage[ls.size()];
+        int i = 0;
+        for (T t : ls)
+            nodes[i++] = new NodeUsage<>(t, 1);
+
+        Circle<Noder<N>> getters = new Circle<>(dimensions * 2);
+
+        // each sort starts from the previous order, just like the
+        // sequential builder, parallelSort is stable so ties end up the same
+        for (i = 0; i < dimensions; i++)
+            nodes = addParallelGetterAndSplitter(nodes,
+                    comparators.getMinComparator(i), getters);
+
+        for (i = 0; i < dimensions; i++)
+            nodes = addParallelGetterAndSplitter(nodes,
+                    comparators.getMaxComparator(i), getters);
+        return getters;
+    }
 
-        getLeafs(1, ls.size(), getters, nf, leafNodes);
+    private <T, N> Circle<Noder<N>> getOrdinalGetters(
+            Collection<? extends T> ls, NodeComparators<T> comparators) {
+        Object[] elements = ls.toArray();
+        int n = elements.length;
+        int[] owner = new int[n];
+        Arrays.fill(owner, 1);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        int[] tmp = new int[n];
+
+        Circle<Noder<N>> getters = new Circle<>(dimensions * 2);
+
+        // each sort starts from the previous order and the merge sort is
+        // stable, so ties end up the same as in the other modes
+        for (int i = 0; i < dimensions; i++) {
+            order = sortOrdinals(order, tmp, elements,
+                    comparators.getMinComparator(i));
+            getters.add(new OrdinalNoder<N>(elements, order, owner));
+        }
+        for (int i = 0; i < dimensions; i++) {
+            order = sortOrdinals(order, tmp, elements,
+                    comparators.getMaxComparator(i));
+            getters.add(new OrdinalNoder<N>(elements, order, owner));
+        }
+        return getters;
+    }
+
+    private <T, N> NodeUsage<T>[] addParallelGetterAndSplitter(
+            NodeUsage<T>[] nodes, Comparator<T> tcomp,
+            Circle<Noder<N>> getters) {
+        NodeUsage<T>[] sortedNodes = nodes.clone();
+        Arrays.parallelSort(sortedNodes, new NodeUsageComparator<>(tcomp));
+        getters.add(new UsageNoder<T, N>(Arrays.asList(sortedNodes)));
+        return sortedNodes;
     }
 
     private <T, N> void addGetterAndSplitter(List<NodeUsage<T>> nodes,
                                              Comparator<T> tcomp,
-                                             Circle<Noder<T, N>> getters) {
+                                             Circle<Noder<N>> getters) {
         Comparator<NodeUsage<T>> comp = new NodeUsageComparator<>(tcomp);
         Collections.sort(nodes, comp);
         List<NodeUsage<T>> sortedNodes = new ArrayList<>(nodes);
-        getters.add(new Noder<T, N>(sortedNodes));
+        getters.add(new UsageNoder<T, N>(sortedNodes));
     }
 
-    private <T, N> void getLeafs(int id, int totalNumberOfElements,
-                                 Circle<Noder<T, N>> getters,
-                                 NodeFactory<N> nf, List<N> leafNodes) {
-        List<Partition> partitionsToExpand = new ArrayList<>();
+    /**
+     * Get a copy of the given order, stable sorted by the given comparator.
+     */
+    private <T> int[] sortOrdinals(int[] order, int[] tmp, Object[] elements,
+                                   Comparator<T> comp) {
+        int[] sorted = order.clone();
+        OrdinalSort<T> sort =
+                new OrdinalSort<>(sorted, tmp, elements, comp, 0, sorted.length);
+        if (pool != null)
+            pool.invoke(sort);
+        else
+            sort.compute();
+        return sorted;
+    }
+
+    private <N> void getLeafs(int id, int totalNumberOfElements,
+                              Circle<Noder<N>> getters,
+                              NodeFactory<N> nf, List<N> leafNodes) {
         int[] pos = new int[2 * dimensions];
-        partitionsToExpand.add(new Partition(id, totalNumberOfElements, pos));
+        getLeafs(new Partition(id, totalNumberOfElements, pos),
+                getters, nf, leafNodes);
+    }
+
+    private <N> void getLeafs(Partition start, Circle<Noder<N>> getters,
+                              NodeFactory<N> nf, List<N> leafNodes) {
+        List<Partition> partitionsToExpand = new ArrayList<>();
+        partitionsToExpand.add(start);
         while (!partitionsToExpand.isEmpty()) {
             Partition p = partitionsToExpand.remove(0);
-            // Get the extreme nodes
-            getters.reset();
-            for (int i = 0; i < getters.getNumElements(); i++) {
-                int nodesToGet = Math.min(p.numElementsLeft, branchFactor);
-                if (nodesToGet == 0)
-                    break;
-                Noder<T, N> noder = getters.getNext();
-                leafNodes.add(noder.getNextNode(p, i, nodesToGet, nf));
-                p.numElementsLeft -= nodesToGet;
-            }
-            // Split the rest of the elements
-            if (p.numElementsLeft > 0) {
-                int splitPos = getSplitPos(p.id) % getters.getNumElements();
-                Noder<T, N> s = getters.get(splitPos);
-                s.split(p, splitPos, p.numElementsLeft,
-                        p.id, 2 * p.id, 2 * p.id + 1,
-                        partitionsToExpand);
+            expand(p, getters, nf, leafNodes, partitionsToExpand);
+        }
+    }
+
+    /**
+     * Create the nodes for the extreme elements of the partition and
+     * split the rest of the elements into two new partitions that are
+     * added first in the list of partitions to expand.
+     */
+    private <N> void expand(Partition p, Circle<Noder<N>> getters,
+                            NodeFactory<N> nf, List<N> leafNodes,
+                            List<Partition> partitionsToExpand) {
+        // Get the extreme nodes
+        for (int i = 0; i < getters.getNumElements(); i++) {
+            int nodesToGet = Math.min(p.numElementsLeft, branchFactor);
+            if (nodesToGet == 0)
+                break;
+            Noder<N> noder = getters.get(i);
+            leafNodes.add(noder.getNextNode(p, i, nodesToGet, nf));
+            p.numElementsLeft -= nodesToGet;
+        }
+        // Split the rest of the elements
+        if (p.numElementsLeft > 0) {
+            int splitPos = getSplitPos(p.id) % getters.getNumElements();
+            Noder<N> s = getters.get(splitPos);
+            s.split(p, splitPos, p.numElementsLeft,
+                    p.id, 2 * p.id, 2 * p.id + 1,
+                    partitionsToExpand);
+        }
+    }
+
+    /**
+     * Expands a partition and its sub partitions. The two sub partitions
+     * only touch elements they own so they can be expanded in parallel,
+     * the created nodes are concatenated in the same order as
+     * the sequential builder creates them.
+     */
+    private class PartitionTask<N> extends RecursiveTask<List<N>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Partition p;
+        private final Circle<Noder<N>> getters;
+        private final NodeFactory<N> nf;
+
+        public PartitionTask(Partition p, Circle<Noder<N>> getters,
+                             NodeFactory<N> nf) {
+            this.p = p;
+            this.getters = getters;
+            this.nf = nf;
+        }
+
+        @Override
+        protected List<N> compute() {
+            List<N> leafNodes = new ArrayList<>();
+            if (p.numElementsLeft <= PARALLEL_THRESHOLD) {
+                getLeafs(p, getters, nf, leafNodes);
+                return leafNodes;
             }
+            List<Partition> parts = new ArrayList<>(2);
+            expand(p, getters, nf, leafNodes, parts);
+            if (parts.isEmpty())
+                return leafNodes;
+            PartitionTask<N> t1 = new PartitionTask<>(parts.get(0), getters, nf);
+            PartitionTask<N> t2 = new PartitionTask<>(parts.get(1), getters, nf);
+            t2.fork();
+            leafNodes.addAll(t1.compute());
+            leafNodes.addAll(t2.join());
+            return leafNodes;
         }
     }
 
@@ -106,13 +284,7 @@ class LeafBuilder {
         }
     }
 
-    private static class Noder<T, N> {
-        private final List<NodeUsage<T>> data;
-
-        private Noder(List<NodeUsage<T>> data) {
-            this.data = data;
-        }
-
+    private abstract static class Noder<N> {
         /**
          * Get the next node.
          *
@@ -122,8 +294,44 @@ class LeafBuilder {
          * @param nf         the NodeFactory used to create the nodes
          * @return the next node
          */
-        private N getNextNode(Partition p, int gi, int maxObjects,
-                              NodeFactory<N> nf) {
+        abstract N getNextNode(Partition p, int gi, int maxObjects,
+                               NodeFactory<N> nf);
+
+        /**
+         * Move the given number of elements from one partition to another.
+         *
+         * @return the position of the last element moved
+         */
+        abstract int markPart(int numToMark, int fromId, int toId,
+                              int startPos);
+
+        void split(Partition p, int gi,
+                   int nodesToMark, int fromId, int toId1, int toId2,
+                   List<Partition> partitionsToExpand) {
+            int sizePart2 = nodesToMark / 2;
+            int sizePart1 = nodesToMark - sizePart2;
+            int startPos = p.currentPositions[gi];
+            int startPos2 = markPart(sizePart1, fromId, toId1, startPos);
+            markPart(sizePart2, fromId, toId2, startPos2);
+            partitionsToExpand.add(0, new Partition(toId1, sizePart1,
+                    p.currentPositions));
+            int[] pos = p.currentPositions.clone();
+            pos[gi] = startPos2;
+            partitionsToExpand.add(1, new Partition(toId2, sizePart2, pos));
+        }
+
+    }
+
+    private static class UsageNoder<T, N> extends Noder<N> {
+        private final List<NodeUsage<T>> data;
+
+        private UsageNoder(List<NodeUsage<T>> data) {
+            this.data = data;
+        }
+
+        @Override
+        N getNextNode(Partition p, int gi, int maxObjects,
+                     NodeFactory<N> nf) {
 
             Object nodeData[] = new Object[maxObjects];
             int s = data.size();
@@ -152,22 +360,8 @@ class LeafBuilder {
             return nu == null || nu.isUsed() || nu.getOwner() != p.id;
         }
 
-        private void split(Partition p, int gi,
-                           int nodesToMark, int fromId, int toId1, int toId2,
-                           List<Partition> partitionsToExpand) {
-            int sizePart2 = nodesToMark / 2;
-            int sizePart1 = nodesToMark - sizePart2;
-            int startPos = p.currentPositions[gi];
-            int startPos2 = markPart(sizePart1, fromId, toId1, startPos);
-            markPart(sizePart2, fromId, toId2, startPos2);
-            partitionsToExpand.add(0, new Partition(toId1, sizePart1,
-                    p.currentPositions));
-            int[] pos = p.currentPositions.clone();
-            pos[gi] = startPos2;
-            partitionsToExpand.add(1, new Partition(toId2, sizePart2, pos));
-        }
-
-        private int markPart(int numToMark, int fromId, int toId, int startPos) {
+        @Override
+        int markPart(int numToMark, int fromId, int toId, int startPos) {
             NodeUsage<T> nu;
             while (numToMark > 0) {
                 while ((nu = data.get(startPos)) == null ||
@@ -180,6 +374,125 @@ class LeafBuilder {
         }
     }
 
+    private static class OrdinalNoder<N> extends Noder<N> {
+        private final Object[] elements;
+        private final int[] order;
+        /**
+         * the partition of each element, negative once the element is used,
+         * shared by all the sort orders
+         */
+        private final int[] owner;
+
+        private OrdinalNoder(Object[] elements, int[] order, int[] owner) {
+            this.elements = elements;
+            this.order = order;
+            this.owner = owner;
+        }
+
+        @Override
+        N getNextNode(Partition p, int gi, int maxObjects,
+                      NodeFactory<N> nf) {
+            Object nodeData[] = new Object[maxObjects];
+            int s = order.length;
+            for (int i = 0; i < maxObjects; i++) {
+                while (p.currentPositions[gi] < s &&
+                        owner[order[p.currentPositions[gi]]] != p.id) {
+                    p.currentPositions[gi]++;
+                }
+                if (p.currentPositions[gi] == s)
+                    throw new NullPointerException("Null data found at: " + i);
+                int e = order[p.currentPositions[gi]];
+                nodeData[i] = elements[e];
+                owner[e] = -owner[e];
+            }
+            return nf.create(nodeData);
+        }
+
+        @Override
+        int markPart(int numToMark, int fromId, int toId, int startPos) {
+            while (numToMark > 0) {
+                while (owner[order[startPos]] != fromId)
+                    startPos++;
+                owner[order[startPos]] = toId;
+                numToMark--;
+            }
+            return startPos;
+        }
+    }
+
+    /**
+     * A stable merge sort of element ordinals, the halves of big ranges
+     * are sorted in parallel when run in a ForkJoinPool.
+     */
+    private static class OrdinalSort<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int INSERTION_SORT_THRESHOLD = 16;
+
+        private final int[] order;
+        private final int[] tmp;
+        private final Object[] elements;
+        private final Comparator<T> comp;
+        private final int from;
+        private final int to;
+
+        public OrdinalSort(int[] order, int[] tmp, Object[] elements,
+                           Comparator<T> comp, int from, int to) {
+            this.order = order;
+            this.tmp = tmp;
+            this.elements = elements;
+            this.comp = comp;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                insertionSort();
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            OrdinalSort<T> low =
+                    new OrdinalSort<>(order, tmp, elements, comp, from, mid);
+            OrdinalSort<T> high =
+                    new OrdinalSort<>(order, tmp, elements, comp, mid, to);
+            if (to - from > PARALLEL_THRESHOLD && inForkJoinPool()) {
+                invokeAll(low, high);
+            } else {
+                low.compute();
+                high.compute();
+            }
+            if (compare(order[mid - 1], order[mid]) <= 0)
+                return;
+            System.arraycopy(order, from, tmp, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < mid && compare(tmp[i], tmp[j]) <= 0))
+                    order[k] = tmp[i++];
+                else
+                    order[k] = tmp[j++];
+            }
+        }
+
+        private void insertionSort() {
+            for (int i = from + 1; i < to; i++) {
+                int e = order[i];
+                int j = i - 1;
+                while (j >= from && compare(order[j], e) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = e;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compare(int e1, int e2) {
+            return comp.compare((T) elements[e1], (T) elements[e2]);
+        }
+    }
+
     private static class Partition {
         private final int id;
         private int numElementsLeft;
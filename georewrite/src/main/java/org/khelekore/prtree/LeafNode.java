@@ -1,26 +1,11 @@
 package org.khelekore.prtree;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
 
 class LeafNode<T> extends NodeBase<T, T> {
 
-    public LeafNode(Object[] data) {
-        super(data);
-    }
-
-    public MBR getMBR(T t, MBRConverter<T> converter) {
-        return new SimpleMBR(t, converter);
-    }
-
-    @Override
-    public MBR computeMBR(MBRConverter<T> converter) {
-        MBR ret = null;
-        for (int i = 0, s = size(); i < s; i++)
-            ret = getUnion(ret, getMBR(get(i), converter));
-        return ret;
+    public LeafNode(Object[] data, MBRConverter<T> converter) {
+        super(data, getBounds(data, converter));
     }
 
     public void expand(MBR mbr, NodeFilter<T> filter, MBRConverter<T> converter,
@@ -37,42 +22,112 @@ class LeafNode<T> extends NodeBase<T, T> {
         }
     }
 
-    public void nnExpand(DistanceCalculator<T> dc,
-                         NodeFilter<T> filter,
-                         List<DistanceResult<T>> drs,
-                         int maxHits,
-                         PriorityQueue<Node<T>> queue,
-                         MinDistComparator<T, Node<T>> mdc) {
+    public int getEntryCount() {
+        return size();
+    }
+
+    public int count(MBR mbr, MBRConverter<T> converter) {
+        int ret = 0;
         for (int i = 0, s = size(); i < s; i++) {
-            T t = get(i);
-            if (filter.accept(t)) {
-                double dist = dc.distanceTo(t, mdc.p);
-                int n = drs.size();
-                if (n < maxHits || dist < drs.get(n - 1).getDistance()) {
-                    add(drs, new DistanceResult<>(t, dist), maxHits);
-                }
+            if (mbr.intersects(get(i), converter))
+                ret++;
+        }
+        return ret;
+    }
+
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     MBRConverter<T> converter, QueryContext ctx,
+                     NodeVisitor<T> visitor) {
+        int hits = 0;
+        int i = 0;
+        for (int s = size(); i < s; ) {
+            T t = get(i++);
+            if (!(converter.getMax(0, t) < xmin ||
+                    converter.getMin(0, t) > xmax ||
+                    converter.getMax(1, t) < ymin ||
+                    converter.getMin(1, t) > ymax)) {
+                hits++;
+                visitor.visit(t);
+                if (ctx.hit())
+                    break;
+            }
+        }
+        QueryStats stats = ctx.getStats();
+        if (stats != null) {
+            stats.nodesVisited++;
+            stats.leavesVisited++;
+            stats.entriesTested += i;
+            stats.hits += hits;
+        }
+    }
+
+    public void findWithinDistance(DistanceCalculator<T> dc,
+                                   NodeFilter<T> filter, PointND p,
+                                   double maxDist2,
+                                   MBRConverter<T> converter,
+                                   QueryContext ctx, NodeVisitor<T> visitor) {
+        int hits = 0;
+        int i = 0;
+        for (int s = size(); i < s; ) {
+            T t = get(i++);
+            if (minDist(t, p, converter) <= maxDist2 && filter.accept(t) &&
+                    dc.distanceTo(t, p) <= maxDist2) {
+                hits++;
+                visitor.visit(t);
+                if (ctx.hit())
+                    break;
             }
         }
+        QueryStats stats = ctx.getStats();
+        if (stats != null) {
+            stats.nodesVisited++;
+            stats.leavesVisited++;
+            stats.entriesTested += i;
+            stats.hits += hits;
+        }
     }
 
-    private void add(List<DistanceResult<T>> drs,
-                     DistanceResult<T> dr,
-                     int maxHits) {
-        int n = drs.size();
-        if (n == maxHits)
-            drs.remove(n - 1);
-        int pos = Collections.binarySearch(drs, dr, comp);
-        if (pos < 0) {
-            // binarySearch return -(pos + 1) for new entries
-            pos = -(pos + 1);
+    private static <T> double minDist(T t, PointND p,
+                                      MBRConverter<T> converter) {
+        double res = 0;
+        for (int i = 0; i < p.getDimensions(); i++) {
+            double o = p.getOrd(i);
+            double min = converter.getMin(i, t);
+            double max = converter.getMax(i, t);
+            double dr = o < min ? min - o : o > max ? o - max : 0;
+            res += dr * dr;
+        }
+        return res;
+    }
+
+    public void findBatch(double[] queries, int[] active, int from, int count,
+                          MBRConverter<T> converter, BatchVisitor<T> visitor) {
+        for (int i = 0, s = size(); i < s; i++) {
+            T t = get(i);
+            double xmin = converter.getMin(0, t);
+            double ymin = converter.getMin(1, t);
+            double xmax = converter.getMax(0, t);
+            double ymax = converter.getMax(1, t);
+            for (int j = from, end = from + count; j < end; j++) {
+                int q = active[j];
+                int p = 4 * q;
+                if (!(xmax < queries[p] || xmin > queries[p + 2] ||
+                        ymax < queries[p + 1] || ymin > queries[p + 3]))
+                    visitor.visit(q, t);
+            }
         }
-        drs.add(pos, dr);
     }
 
-    private static final Comparator<DistanceResult<?>> comp =
-            new Comparator<DistanceResult<?>>() {
-                public int compare(DistanceResult<?> d1, DistanceResult<?> d2) {
-                    return Double.compare(d1.getDistance(), d2.getDistance());
-                }
-            };
+    public void nnExpand(DistanceCalculator<T> dc,
+                         NodeFilter<T> filter,
+                         PointND p,
+                         MBRConverter<T> converter,
+                         DoubleObjectHeap<Node<T>> nodes,
+                         DoubleObjectHeap<T> entries) {
+        for (int i = 0, s = size(); i < s; i++) {
+            T t = get(i);
+            if (filter.accept(t))
+                entries.add(dc.distanceTo(t, p), t);
+        }
+    }
 }
@@ -1,48 +1,66 @@
 package org.khelekore.prtree;
 
-import java.util.PriorityQueue;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-import org.khelekore.prtree.DistanceResult;
-import org.khelekore.prtree.NodeFilter;
-
-class NearestNeighbour<T> {
+/**
+ * A distance browsing iterator, returns the objects of a tree in
+ * increasing distance from a point.
+ * <p>
+ * <p>Nodes and data objects are kept in two heaps ordered by their
+ * distance, each distance is computed once when the node or object is
+ * added. A data object is returned as soon as no node is closer than it,
+ * so only the part of the tree that is needed for the objects returned so
+ * far is ever expanded. This requires that the DistanceCalculator never
+ * returns less than the MINDIST of the bounds of the object.
+ *
+ * @param <T> the data type stored in the tree
+ */
+class NearestNeighbour<T> implements Iterator<DistanceResult<T>> {
 
     private final MBRConverter<T> converter;
     private final NodeFilter<T> filter;
-    private final int maxHits;
-    private final Node<T> root;
     private final DistanceCalculator<T> dc;
     private final PointND p;
+    private final DoubleObjectHeap<Node<T>> nodes;
+    private final DoubleObjectHeap<T> entries;
 
     public NearestNeighbour(MBRConverter<T> converter,
                             NodeFilter<T> filter,
-                            int maxHits,
                             Node<T> root,
+                            int branchFactor,
                             DistanceCalculator<T> dc,
                             PointND p) {
         this.converter = converter;
         this.filter = filter;
-        this.maxHits = maxHits;
-        this.root = root;
         this.dc = dc;
         this.p = p;
+        nodes = new DoubleObjectHeap<>(4 * branchFactor);
+        entries = new DoubleObjectHeap<>(4 * branchFactor);
+        if (root != null && root.size() > 0)
+            nodes.add(MinDist.get(root.getMBR(converter), p), root);
     }
 
-    /**
-     * @return the nearest neighbour
-     */
-    public List<DistanceResult<T>> find() {
-        List<DistanceResult<T>> ret = new ArrayList<>(maxHits);
-        MinDistComparator<T, Node<T>> nc =
-                new MinDistComparator<>(converter, p);
-        PriorityQueue<Node<T>> queue = new PriorityQueue<>(20, nc);
-        queue.add(root);
-        while (!queue.isEmpty()) {
-            Node<T> n = queue.remove();
-            n.nnExpand(dc, filter, ret, maxHits, queue, nc);
+    public boolean hasNext() {
+        while (!nodes.isEmpty() &&
+                (entries.isEmpty() || nodes.peekKey() < entries.peekKey())) {
+            Node<T> n = nodes.peekValue();
+            nodes.remove();
+            n.nnExpand(dc, filter, p, converter, nodes, entries);
         }
+        return !entries.isEmpty();
+    }
+
+    public DistanceResult<T> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        DistanceResult<T> ret =
+                new DistanceResult<>(entries.peekValue(), entries.peekKey());
+        entries.remove();
         return ret;
     }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
 }
@@ -1,7 +1,6 @@
 package org.khelekore.prtree;
 
 import java.util.List;
-import java.util.PriorityQueue;
 
 /**
  * A node in a Priority R-Tree
@@ -17,10 +16,17 @@ interface Node<T> {
     int size();
 
     /**
-     * Get the MBR of this node
+     * Get the number of data entries in this node and all its children
+     *
+     * @return the number of data entries in the subtree of this node
+     */
+    int getEntryCount();
+
+    /**
+     * Get the MBR of this node, it is computed when the node is created.
      *
      * @param converter the MBR converter to use for the actual objects
-     * @return the MBR for this node
+     * @return the MBR for this node, null if the node is empty
      */
     MBR getMBR(MBRConverter<T> converter);
 
@@ -49,21 +55,84 @@ interface Node<T> {
               List<T> result, NodeFilter<T> filter);
 
     /**
-     * Expand the nearest neighbour search
+     * Count the data entries that intersect with the given MBR.
+     * Child nodes that are fully inside the query are counted without
+     * being visited.
+     *
+     * @param mbr       the query rectangle
+     * @param converter the MBR converter to use for the actual objects
+     * @return the number of data entries that intersect the query
+     */
+    int count(MBR mbr, MBRConverter<T> converter);
+
+    /**
+     * Visit this node without allocating anything, child nodes that
+     * intersect the query are pushed to the context and data entries
+     * that intersect the query are given to the visitor.
+     *
+     * @param xmin      the minimum value of the x coordinate of the query
+     * @param ymin      the minimum value of the y coordinate of the query
+     * @param xmax      the maximum value of the x coordinate of the query
+     * @param ymax      the maximum value of the y coordinate of the query
+     * @param converter the MBR converter to use for the actual objects
+     * @param ctx       the context that holds the nodes still to visit
+     * @param visitor   the visitor that gets the found data entries
+     */
+    void find(double xmin, double ymin, double xmax, double ymax,
+              MBRConverter<T> converter, QueryContext ctx,
+              NodeVisitor<T> visitor);
+
+    /**
+     * Visit this node for a distance query, child nodes whose MINDIST to
+     * the point is at most maxDist2 are pushed to the context and accepted
+     * data entries at most maxDist2 away are given to the visitor.
+     *
+     * @param dc        the DistanceCalculator to use for the data entries
+     * @param filter    the NodeFilter to use for the data entries
+     * @param p         the center of the query
+     * @param maxDist2  the squared maximum distance
+     * @param converter the MBR converter to use for the actual objects
+     * @param ctx       the context that holds the nodes still to visit
+     * @param visitor   the visitor that gets the found data entries
+     */
+    void findWithinDistance(DistanceCalculator<T> dc, NodeFilter<T> filter,
+                            PointND p, double maxDist2,
+                            MBRConverter<T> converter, QueryContext ctx,
+                            NodeVisitor<T> visitor);
+
+    /**
+     * Visit this node for a batch of 2 dimensional queries. The indices of
+     * the queries that intersect this node are given in active, child nodes
+     * are only visited for the queries that intersect them.
      *
-     * @param dc           the DistanceCalculator to use when calculating distances
-     * @param filter       the NodeFilter to use when getting node objects
-     * @param currentFinds the currently found results, this list will
-     *                     be populated
-     * @param maxHits      the maximum number of entries to store
-     * @param queue        where to store child nodes that needs expansion
-     * @param mdc          the MinDistComparator to use
+     * @param queries   xmin, ymin, xmax, ymax for each query
+     * @param active    the query indices, the part after from + count is
+     *                  used as working storage for the child nodes
+     * @param from      the position of the first active query index
+     * @param count     the number of active query indices
+     * @param converter the MBR converter to use for the actual objects
+     * @param visitor   the visitor that gets the found data entries
+     */
+    void findBatch(double[] queries, int[] active, int from, int count,
+                   MBRConverter<T> converter, BatchVisitor<T> visitor);
+
+    /**
+     * Expand the nearest neighbour search, child nodes are added to the
+     * node heap by their MINDIST and accepted data objects are added to
+     * the entry heap by their distance.
+     *
+     * @param dc        the DistanceCalculator to use when calculating distances
+     * @param filter    the NodeFilter to use when getting node objects
+     * @param p         the point to find the nearest neighbours to
+     * @param converter the MBR converter to use for the actual objects
+     * @param nodes     where to store child nodes that needs expansion
+     * @param entries   where to store the data objects
      */
     void nnExpand(DistanceCalculator<T> dc,
                   NodeFilter<T> filter,
-                  List<DistanceResult<T>> currentFinds,
-                  int maxHits,
-                  PriorityQueue<Node<T>> queue,
-                  MinDistComparator<T, Node<T>> mdc);
+                  PointND p,
+                  MBRConverter<T> converter,
+                  DoubleObjectHeap<Node<T>> nodes,
+                  DoubleObjectHeap<T> entries);
 
 }
@@ -1,15 +1,25 @@
 package org.khelekore.prtree;
 
 /**
+ * The base of the tree nodes. A node is immutable, its MBR is computed
+ * when the node is created and all fields are final, so a loaded tree can
+ * be read by any number of threads without locking and no query ever
+ * writes to the tree.
+ *
  * @param <N> the type of the child entries
  * @param <T> the type of the data entries
  */
 abstract class NodeBase<N, T> implements Node<T> {
-    private MBR mbr;
-    private Object[] data;
+    private final Object[] data;
+    private final MBR mbr;
 
-    public NodeBase(Object[] data) {
+    /**
+     * @param data the child entries of this node
+     * @param mbr  the bounds of the child entries, null if there are none
+     */
+    public NodeBase(Object[] data, MBR mbr) {
         this.data = data;
+        this.mbr = mbr;
     }
 
     public int size() {
@@ -22,16 +32,36 @@ abstract class NodeBase<N, T> implements Node<T> {
     }
 
     public MBR getMBR(MBRConverter<T> converter) {
-        if (mbr == null)
-            mbr = computeMBR(converter);
         return mbr;
     }
 
-    public abstract MBR computeMBR(MBRConverter<T> converter);
-
-    public MBR getUnion(MBR m1, MBR m2) {
-        if (m1 == null)
-            return m2;
-        return m1.union(m2);
+    /**
+     * Compute the bounds of the given entries.
+     *
+     * @param data      the entries
+     * @param converter the MBR converter to use for the entries
+     * @param <E>       the type of the entries
+     * @return the bounds of all the entries, null if there are none
+     */
+    @SuppressWarnings("unchecked")
+    static <E> MBR getBounds(Object[] data, MBRConverter<E> converter) {
+        if (data.length == 0)
+            return null;
+        int dims = converter.getDimensions();
+        double[] values = new double[2 * dims];
+        for (int axis = 0; axis < dims; axis++) {
+            values[2 * axis] = Double.POSITIVE_INFINITY;
+            values[2 * axis + 1] = Double.NEGATIVE_INFINITY;
+        }
+        for (Object o : data) {
+            E e = (E) o;
+            for (int axis = 0; axis < dims; axis++) {
+                values[2 * axis] =
+                        Math.min(values[2 * axis], converter.getMin(axis, e));
+                values[2 * axis + 1] =
+                        Math.max(values[2 * axis + 1], converter.getMax(axis, e));
+            }
+        }
+        return new SimpleMBR(values);
     }
 }
@@ -3,10 +3,9 @@ package org.khelekore.prtree;
 /**
  * A factory that creates the nodes (either leaf or internal).
  *
- * @param <T> the data stored in the node
  * @param <N> the type of the node
  */
-interface NodeFactory<N> {
+public interface NodeFactory<N> {
     /**
      * Create a new node
      *
@@ -0,0 +1,27 @@
+package org.khelekore.prtree;
+
+/**
+ * An MBRConverter for the nodes of a tree, used when the nodes of one
+ * level are grouped into the nodes of the next level.
+ *
+ * @param <T> the data type stored in the tree
+ */
+class NodeMBRConverter<T> implements MBRConverter<Node<T>> {
+    private final MBRConverter<T> converter;
+
+    public NodeMBRConverter(MBRConverter<T> converter) {
+        this.converter = converter;
+    }
+
+    public int getDimensions() {
+        return converter.getDimensions();
+    }
+
+    public double getMin(int axis, Node<T> n) {
+        return n.getMBR(converter).getMin(axis);
+    }
+
+    public double getMax(int axis, Node<T> n) {
+        return n.getMBR(converter).getMax(axis);
+    }
+}
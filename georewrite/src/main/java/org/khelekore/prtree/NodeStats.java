@@ -0,0 +1,120 @@
+package org.khelekore.prtree;
+
+/**
+ * The shape of a loaded tree, used to compare the bulk loaders.
+ * <p>
+ * <p>The overlap of an internal node is the sum of the pairwise
+ * intersection areas of its children divided by its own area, using the
+ * first two axes. A low mean overlap means that a small query has to
+ * follow few paths down the tree.
+ */
+public class NodeStats {
+    private final int height;
+    private final int internalNodes;
+    private final int leafNodes;
+    private final int entries;
+    private final double meanOverlap;
+
+    private NodeStats(int height, int internalNodes, int leafNodes,
+                      int entries, double meanOverlap) {
+        this.height = height;
+        this.internalNodes = internalNodes;
+        this.leafNodes = leafNodes;
+        this.entries = entries;
+        this.meanOverlap = meanOverlap;
+    }
+
+    static <T> NodeStats of(PRTree<T> tree) {
+        if (tree.isEmpty())
+            return new NodeStats(tree.getHeight(), 0, 0, 0, 0);
+        MBRConverter<T> converter = tree.getConverter();
+        BreadthFirstNodes<T> nodes = new BreadthFirstNodes<>(tree.getRoot());
+        int internal = nodes.getFirstLeafNode();
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < internal; i++) {
+            InternalNode<T> n = (InternalNode<T>) nodes.get(i);
+            double area = area(n.getMBR(converter));
+            if (area <= 0)
+                continue;
+            double overlap = 0;
+            for (int a = 0, s = n.size(); a < s; a++) {
+                MBR ma = n.get(a).getMBR(converter);
+                for (int b = a + 1; b < s; b++)
+                    overlap += intersection(ma, n.get(b).getMBR(converter));
+            }
+            sum += overlap / area;
+            count++;
+        }
+        return new NodeStats(tree.getHeight(), internal,
+                nodes.getNumberOfNodes() - internal,
+                nodes.getNumberOfEntries(), count == 0 ? 0 : sum / count);
+    }
+
+    private static double area(MBR m) {
+        return (m.getMax(0) - m.getMin(0)) * (m.getMax(1) - m.getMin(1));
+    }
+
+    private static double intersection(MBR a, MBR b) {
+        double w = Math.min(a.getMax(0), b.getMax(0)) -
+                Math.max(a.getMin(0), b.getMin(0));
+        double h = Math.min(a.getMax(1), b.getMax(1)) -
+                Math.max(a.getMin(1), b.getMin(1));
+        return w > 0 && h > 0 ? w * h : 0;
+    }
+
+    /**
+     * Get the height of the tree.
+     *
+     * @return the number of levels, leaf nodes included
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the number of internal nodes.
+     *
+     * @return the number of internal nodes
+     */
+    public int getInternalNodes() {
+        return internalNodes;
+    }
+
+    /**
+     * Get the number of leaf nodes.
+     *
+     * @return the number of leaf nodes
+     */
+    public int getLeafNodes() {
+        return leafNodes;
+    }
+
+    /**
+     * Get the mean number of data entries in a leaf node.
+     *
+     * @return the mean leaf fill, 0 if the tree is empty
+     */
+    public double getMeanLeafFill() {
+        return leafNodes == 0 ? 0 : (double) entries / leafNodes;
+    }
+
+    /**
+     * Get the mean overlap of the children of the internal nodes, nodes
+     * with an empty area are not counted.
+     *
+     * @return the mean overlap ratio, 0 if there is no internal node
+     */
+    public double getMeanOverlap() {
+        return meanOverlap;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{height: " + height +
+                ", internalNodes: " + internalNodes +
+                ", leafNodes: " + leafNodes +
+                ", entries: " + entries +
+                ", meanOverlap: " + meanOverlap + "}";
+    }
+}
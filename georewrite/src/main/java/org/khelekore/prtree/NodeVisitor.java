@@ -0,0 +1,15 @@
+package org.khelekore.prtree;
+
+/**
+ * A callback that receives the objects found by a query.
+ *
+ * @param <T> the node type
+ */
+public interface NodeVisitor<T> {
+    /**
+     * Called once for every object found.
+     *
+     * @param t the node user data
+     */
+    void visit(T t);
+}
@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A Priority R-Tree, a spatial index, for N dimensions.
@@ -14,10 +15,14 @@ import java.util.List;
  */
 public class PRTree<T> {
 
-    private MBRConverter<T> converter;
-    private int branchFactor;
+    private final MBRConverter<T> converter;
+    private final int branchFactor;
 
-    private Node<T> root;
+    /**
+     * Written last by load, so a thread that reads a non null root also
+     * sees the rest of the loaded tree.
+     */
+    private volatile Node<T> root;
     private int numLeafs;
     private int height;
 
@@ -43,55 +48,124 @@ public class PRTree<T> {
      * @throws IllegalStateException if the tree is already loaded
      */
     public void load(Collection<? extends T> data) {
+        load(data, BulkLoaders.priority());
+    }
+
+    /**
+     * Bulk load data into this tree using the threads of the given pool.
+     * <p>
+     * The sorts are done with parallel sorts and independent partitions
+     * are expanded in parallel, the resulting tree is the same as the one
+     * created by {@link #load(Collection)}. The MBRConverter must be safe
+     * to use from several threads at once.
+     *
+     * @param data the collection of data to store in the tree.
+     * @param pool the pool that runs the parallel work
+     * @throws IllegalStateException if the tree is already loaded
+     */
+    public void load(Collection<? extends T> data, ForkJoinPool pool) {
+        load(data, BulkLoaders.priority(pool));
+    }
+
+    /**
+     * Bulk load data into this tree using as little extra memory as possible.
+     * <p>
+     * Each sort order is kept as an int permutation of the data and the
+     * state of each data entry is kept in an int array, so the builder needs
+     * a few ints per entry instead of one wrapper object per entry and one
+     * list of wrappers per sort order. The resulting tree is the same as the
+     * one created by {@link #load(Collection)}.
+     *
+     * @param data the collection of data to store in the tree.
+     * @throws IllegalStateException if the tree is already loaded
+     */
+    public void loadLowMemory(Collection<? extends T> data) {
+        load(data, BulkLoaders.priorityLowMemory());
+    }
+
+    /**
+     * Bulk load data into this tree using as little extra memory as
+     * possible and the threads of the given pool.
+     *
+     * @param data the collection of data to store in the tree.
+     * @param pool the pool that runs the parallel work
+     * @throws IllegalStateException if the tree is already loaded
+     * @see #loadLowMemory(Collection)
+     * @see #load(Collection, ForkJoinPool)
+     */
+    public void loadLowMemory(Collection<? extends T> data, ForkJoinPool pool) {
+        load(data, BulkLoaders.priorityLowMemory(pool));
+    }
+
+    /**
+     * Bulk load data into this tree with the given loading strategy.
+     * <p>
+     * The loader is used to group the data into leaf nodes and then
+     * to group each level of nodes into the next level, until all nodes
+     * fit into the root node.
+     *
+     * <p>
+     * <p>The MBR of each node is computed when the node is created, so the
+     * MBRs are computed bottom up and in parallel if the loader creates
+     * nodes in parallel. The nodes are immutable and the tree is never
+     * written to after loading, so it can be queried from any number of
+     * threads at once.
+     *
+     * @param data   the collection of data to store in the tree.
+     * @param loader the strategy to use, see {@link BulkLoaders}
+     * @throws IllegalStateException if the tree is already loaded
+     */
+    public void load(Collection<? extends T> data, BulkLoader loader) {
         if (root != null)
             throw new IllegalStateException("Tree is already loaded");
-        numLeafs = data.size();
-        LeafBuilder lb = new LeafBuilder(converter.getDimensions(), branchFactor);
+        int numLeafs = data.size();
 
         List<LeafNode<T>> leafNodes =
                 new ArrayList<>(estimateSize(numLeafs));
-        lb.buildLeafs(data, new DataComparators<>(converter),
+        loader.buildNodes(data, converter, branchFactor,
                 new LeafNodeFactory(), leafNodes);
 
-        height = 1;
+        int height = 1;
+        MBRConverter<Node<T>> nodeConverter = new NodeMBRConverter<>(converter);
         List<? extends Node<T>> nodes = leafNodes;
         while (nodes.size() > branchFactor) {
             height++;
             List<InternalNode<T>> internalNodes =
                     new ArrayList<>(estimateSize(nodes.size()));
-            lb.buildLeafs(nodes, new InternalNodeComparators<>(converter),
+            loader.buildNodes(nodes, nodeConverter, branchFactor,
                     new InternalNodeFactory(), internalNodes);
             nodes = internalNodes;
         }
-        setRoot(nodes);
+        if (nodes.size() > 1)
+            height++;
+        this.numLeafs = numLeafs;
+        this.height = height;
+        root = createRoot(nodes);
     }
 
     private int estimateSize(int dataSize) {
         return (int) (1.0 / (branchFactor - 1) * dataSize);
     }
 
-    private <N extends Node<T>> void setRoot(List<N> nodes) {
+    private <N extends Node<T>> Node<T> createRoot(List<N> nodes) {
         if (nodes.size() == 0)
-            root = new InternalNode<>(new Object[0]);
-        else if (nodes.size() == 1) {
-            root = nodes.get(0);
-        } else {
-            height++;
-            root = new InternalNode<>(nodes.toArray());
-        }
+            return new InternalNode<>(new Object[0], converter);
+        else if (nodes.size() == 1)
+            return nodes.get(0);
+        return new InternalNode<>(nodes.toArray(), converter);
     }
 
     private class LeafNodeFactory
             implements NodeFactory<LeafNode<T>> {
         public LeafNode<T> create(Object[] data) {
-            return new LeafNode<>(data);
+            return new LeafNode<>(data, converter);
         }
     }
 
     private class InternalNodeFactory
             implements NodeFactory<InternalNode<T>> {
         public InternalNode<T> create(Object[] data) {
-            return new InternalNode<>(data);
+            return new InternalNode<>(data, converter);
         }
     }
 
@@ -129,13 +203,30 @@ public class PRTree<T> {
         return numLeafs;
     }
 
+    /**
+     * Get the branch factor of this tree.
+     *
+     * @return the number of child nodes for each internal node
+     */
+    public int getBranchFactor() {
+        return branchFactor;
+    }
+
+    MBRConverter<T> getConverter() {
+        return converter;
+    }
+
+    Node<T> getRoot() {
+        return root;
+    }
+
     /**
      * Check if this tree is empty
      *
      * @return true if the number of leafs is 0, false otherwise
      */
     public boolean isEmpty() {
-        return numLeafs == 0;
+        return root == null || numLeafs == 0;
     }
 
     /**
@@ -147,6 +238,16 @@ public class PRTree<T> {
         return height;
     }
 
+    /**
+     * Get the node counts and the node overlap of this tree. This walks
+     * all nodes, so it is meant for diagnostics and not for every query.
+     *
+     * @return the statistics of the current nodes
+     */
+    public NodeStats getNodeStats() {
+        return NodeStats.of(this);
+    }
+
     /**
      * Finds all objects that intersect the given rectangle and stores
      * the found node in the given list.
@@ -209,6 +310,249 @@ public class PRTree<T> {
         root.find(query, converter, resultNodes, filter);
     }
 
+    /**
+     * Finds all objects that intersect the given rectangle and hands
+     * them to the given visitor.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the PRTree actually has.
+     * <p>
+     * <p>This method does not allocate anything, the traversal uses the
+     * node stack of the given context. The visitor may end the query
+     * early by calling {@link QueryContext#stop}.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     QueryContext ctx, NodeVisitor<T> visitor) {
+        find(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, ctx, visitor);
+    }
+
+    /**
+     * Finds objects that intersect the given rectangle and hands them to
+     * the given visitor, the traversal ends as soon as limit objects have
+     * been found or the visitor calls {@link QueryContext#stop}.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the PRTree actually has.
+     * <p>
+     * <p>The tree is walked depth first, so the found objects tend to
+     * come from one part of the rectangle, use
+     * {@link #findSpread findSpread} to get a sample from all of it.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param limit   the maximum number of objects to find
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    @SuppressWarnings("unchecked")
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     int limit, QueryContext ctx, NodeVisitor<T> visitor) {
+        validateRect(xmin, ymin, xmax, ymax);
+        ctx.start(limit);
+        if (isEmpty())
+            return;
+        ctx.push(root);
+        while (!ctx.isEmpty() && !ctx.isStopped()) {
+            Node<T> n = (Node<T>) ctx.pop();
+            n.find(xmin, ymin, xmax, ymax, converter, ctx, visitor);
+        }
+        ctx.clear();
+    }
+
+    /**
+     * Finds up to limit objects that intersect the given rectangle,
+     * spread over the whole rectangle, and hands them to the given
+     * visitor. The visitor may end the query early by calling
+     * {@link QueryContext#stop}.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the PRTree actually has.
+     * <p>
+     * <p>The tree is expanded breadth first, taking the children of the
+     * nodes on a level round robin, until a level has at least limit nodes
+     * that intersect the rectangle. The objects are then taken one from
+     * each of those subtrees in turn. This is useful when only the first
+     * objects are shown, for instance with a feature limit, since they are
+     * not all taken from one corner of the rectangle. It is more expensive
+     * than {@link #find(double, double, double, double, int, QueryContext,
+     * NodeVisitor)}, so use it when limit is small.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param limit   the maximum number of objects to find
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void findSpread(double xmin, double ymin, double xmax, double ymax,
+                           int limit, QueryContext ctx,
+                           NodeVisitor<T> visitor) {
+        validateRect(xmin, ymin, xmax, ymax);
+        ctx.start(limit);
+        if (isEmpty() || ctx.isStopped())
+            return;
+        new SpreadFinder<>(converter, xmin, ymin, xmax, ymax)
+                .find(root, limit, ctx, visitor);
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and hands
+     * them to the given sink in chunks.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the PRTree actually has.
+     * <p>
+     * <p>The number of hits is first estimated from the entry counts of
+     * the nodes two levels below the root. If the estimate is below the
+     * threshold the tree is searched in the calling thread, otherwise the
+     * subtrees that intersect the query are searched in parallel in the
+     * given pool. Either way this method returns when the search is done.
+     *
+     * @param xmin      the minimum value of the x coordinate when searching
+     * @param ymin      the minimum value of the y coordinate when searching
+     * @param xmax      the maximum value of the x coordinate when searching
+     * @param ymax      the maximum value of the y coordinate when searching
+     * @param sink      the thread safe sink that gets the found objects
+     * @param pool      the ForkJoinPool to run a parallel search in
+     * @param threshold the estimated number of hits needed to search in
+     *                  parallel
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     * @throws NullPointerException     if pool is null
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     ResultSink<T> sink, ForkJoinPool pool, int threshold) {
+        validateRect(xmin, ymin, xmax, ymax);
+        if (pool == null)
+            throw new NullPointerException("Pool may not be null");
+        if (isEmpty())
+            return;
+        ParallelFinder<T> finder =
+                new ParallelFinder<>(converter, xmin, ymin, xmax, ymax, sink);
+        if (finder.estimate(root) < threshold)
+            finder.find(root);
+        else
+            finder.find(root, pool);
+    }
+
+    /**
+     * Finds all objects that intersect any of the given rectangles and
+     * hands them to the given visitor together with the index of the
+     * rectangle they intersect.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the PRTree actually has.
+     * <p>
+     * <p>The tree is traversed once for the whole batch, each node is
+     * visited once and only checked against the queries that intersect
+     * its parent. For a batch of adjacent windows, like the tiles of a
+     * meta tile, this is much cheaper than one find per window since the
+     * upper levels of the tree are shared by all queries.
+     * An object that intersects several queries is visited once for each
+     * of them.
+     *
+     * @param queries xmin, ymin, xmax, ymax for each query
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if the length of queries is not a
+     *                                  multiple of 4 or if xmin &gt; xmax or
+     *                                  ymin &gt; ymax for any query
+     */
+    public void find(double[] queries, QueryContext ctx,
+                     BatchVisitor<T> visitor) {
+        if (queries.length % 4 != 0)
+            throw new IllegalArgumentException("queries.length: " +
+                    queries.length + " is not a multiple of 4");
+        int numQueries = queries.length / 4;
+        for (int i = 0, p = 0; i < numQueries; i++, p += 4)
+            validateRect(queries[p], queries[p + 1],
+                    queries[p + 2], queries[p + 3]);
+        if (isEmpty() || numQueries == 0)
+            return;
+        // one level of active query indices for the root and each level below
+        int[] active = ctx.getInts(numQueries * (height + 1));
+        MBR m = root.getMBR(converter);
+        int count = 0;
+        for (int i = 0, p = 0; i < numQueries; i++, p += 4) {
+            if (!(m.getMax(0) < queries[p] || m.getMin(0) > queries[p + 2] ||
+                    m.getMax(1) < queries[p + 1] || m.getMin(1) > queries[p + 3]))
+                active[count++] = i;
+        }
+        if (count > 0)
+            root.findBatch(queries, active, 0, count, converter, visitor);
+    }
+
+    /**
+     * Finds all objects that intersect each of the given rectangles,
+     * traversing the tree once for the whole batch.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the PRTree actually has.
+     *
+     * @param queries the query rectangles
+     * @return one list of found objects for each query, in query order
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     *                                  for any query
+     */
+    public List<List<T>> find(List<? extends MBR2D> queries) {
+        double[] q = new double[4 * queries.size()];
+        final List<List<T>> ret = new ArrayList<>(queries.size());
+        int p = 0;
+        for (MBR2D mbr : queries) {
+            q[p++] = mbr.getMinX();
+            q[p++] = mbr.getMinY();
+            q[p++] = mbr.getMaxX();
+            q[p++] = mbr.getMaxY();
+            ret.add(new ArrayList<T>());
+        }
+        find(q, new QueryContext(), new BatchVisitor<T>() {
+            public void visit(int query, T t) {
+                ret.get(query).add(t);
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Count the objects that intersect the given rectangle.
+     * Note, this method will only use two dimensions, no matter
+     * how many dimensions the PRTree actually has.
+     *
+     * @param xmin the minimum value of the x coordinate when searching
+     * @param ymin the minimum value of the y coordinate when searching
+     * @param xmax the maximum value of the x coordinate when searching
+     * @param ymax the maximum value of the y coordinate when searching
+     * @return the number of objects that intersect the rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public int count(double xmin, double ymin, double xmax, double ymax) {
+        return count(new SimpleMBR(xmin, xmax, ymin, ymax));
+    }
+
+    /**
+     * Count the objects that intersect the given rectangle.
+     * <p>
+     * <p>Every internal node knows the number of objects below it, so a
+     * node that is fully inside the query is counted without visiting it.
+     * Only the nodes on the border of the query are expanded.
+     *
+     * @param query the bounds of the query
+     * @return the number of objects that intersect the query
+     * @throws IllegalArgumentException if max &lt; min for any axis
+     */
+    public int count(MBR query) {
+        validateRect(query);
+        if (isEmpty() || !query.intersects(root.getMBR(converter)))
+            return 0;
+        return root.count(query, converter);
+    }
+
     /**
      * Find all objects that intersect the given rectangle.
      * Note, this find method will only use two dimensions, no matter
@@ -265,12 +609,29 @@ public class PRTree<T> {
      * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
      */
     public Iterable<T> find(final MBR query, final NodeFilter<T> filter) {
+        return find(query, filter, new QueryStats());
+    }
+
+    /**
+     * Find all objects that intersect the given rectangle and count the
+     * work done while iterating over them.
+     *
+     * @param query  the bounds of the query
+     * @param filter a secondary filter to apply to the found nodes
+     * @param stats  the stats that each iteration adds to
+     * @return an iterable of the elements inside the query rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public Iterable<T> find(final MBR query, final NodeFilter<T> filter,
+                            final QueryStats stats) {
         validateRect(query);
         if (filter == null)
             throw new NullPointerException("Filter may not be null");
+        if (stats == null)
+            throw new NullPointerException("Stats may not be null");
         return new Iterable<T>() {
             public Iterator<T> iterator() {
-                return new Finder(query, filter);
+                return new Finder(query, filter, stats);
             }
         };
     }
@@ -287,6 +648,16 @@ public class PRTree<T> {
         }
     }
 
+    static void validateRect(double xmin, double ymin,
+                             double xmax, double ymax) {
+        if (xmax < xmin)
+            throw new IllegalArgumentException("max: " + xmax +
+                    " < min: " + xmin + ", axis: 0");
+        if (ymax < ymin)
+            throw new IllegalArgumentException("max: " + ymax +
+                    " < min: " + ymin + ", axis: 1");
+    }
+
     private class Finder implements Iterator<T> {
         private final MBR mbr;
         private final NodeFilter<T> filter;
@@ -295,12 +666,12 @@ public class PRTree<T> {
         private List<Node<T>> toVisit = new ArrayList<>();
         private T next;
 
-        private int visitedNodes = 0;
-        private int dataNodesVisited = 0;
+        private final QueryStats stats;
 
-        public Finder(MBR mbr, NodeFilter<T> filter) {
+        public Finder(MBR mbr, NodeFilter<T> filter, QueryStats stats) {
             this.mbr = mbr;
             this.filter = filter;
+            this.stats = stats;
             toVisit.add(root);
             findNext();
         }
@@ -318,14 +689,18 @@ public class PRTree<T> {
         private void findNext() {
             while (ts.isEmpty() && !toVisit.isEmpty()) {
                 Node<T> n = toVisit.remove(toVisit.size() - 1);
-                visitedNodes++;
+                stats.nodesVisited++;
+                if (n instanceof LeafNode) {
+                    stats.leavesVisited++;
+                    stats.entriesTested += n.size();
+                }
                 n.expand(mbr, filter, converter, ts, toVisit);
             }
             if (ts.isEmpty()) {
                 next = null;
             } else {
                 next = ts.remove(ts.size() - 1);
-                dataNodesVisited++;
+                stats.hits++;
             }
         }
 
@@ -334,6 +709,96 @@ public class PRTree<T> {
         }
     }
 
+    /**
+     * Find all pairs of objects, one from this tree and one from the
+     * other tree, whose bounds intersect.
+     * <p>
+     * <p>The two trees are walked together and a pair of nodes is only
+     * expanded if their bounds intersect, so this is one traversal
+     * instead of one query per object. The pairs are candidates, the
+     * caller may need to check the exact geometries.
+     * Only the dimensions that both trees have are used.
+     *
+     * @param other   the tree to join with
+     * @param visitor the visitor that gets the found pairs
+     * @param <S>     the data type of the other tree
+     */
+    public <S> void join(PRTree<S> other, JoinVisitor<T, S> visitor) {
+        if (isEmpty() || other.isEmpty())
+            return;
+        new SpatialJoin<>(converter, other.converter, visitor)
+                .join(root, other.root, null);
+    }
+
+    /**
+     * Find all pairs of objects, one from this tree and one from the
+     * other tree, whose bounds intersect. The pairs of intersecting root
+     * children are joined in parallel in the given pool, so the visitor
+     * has to be thread safe.
+     *
+     * @param other   the tree to join with
+     * @param visitor the visitor that gets the found pairs
+     * @param pool    the ForkJoinPool to run the join in
+     * @param <S>     the data type of the other tree
+     * @throws NullPointerException if pool is null
+     */
+    public <S> void join(PRTree<S> other, JoinVisitor<T, S> visitor,
+                         ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException("Pool may not be null");
+        if (isEmpty() || other.isEmpty())
+            return;
+        new SpatialJoin<>(converter, other.converter, visitor)
+                .join(root, other.root, pool);
+    }
+
+    /**
+     * Finds all objects that are at most maxDistance away from the given
+     * point and hands them to the given visitor, without building any
+     * list of results.
+     * <p>
+     * <p>Nodes whose MINDIST to the point is more than maxDistance squared
+     * are skipped, so are data objects whose own MINDIST is too large,
+     * only the remaining objects are checked with the DistanceCalculator.
+     * Like {@link MinDist} the DistanceCalculator has to return the squared
+     * distance and it may not be less than the MINDIST of the bounds of the
+     * object, an object is found if its distance is at most maxDistance
+     * squared.
+     *
+     * @param dc          the DistanceCalculator to use
+     * @param filter      a NodeFilter that can be used to ignore some leaf
+     *                    nodes
+     * @param p           the center of the query
+     * @param maxDistance the maximum distance from the point
+     * @param ctx         the reusable working storage for the query
+     * @param visitor     the visitor that gets the found objects, it may
+     *                    end the query early by calling
+     *                    {@link QueryContext#stop}
+     * @throws IllegalArgumentException if maxDistance is negative
+     */
+    @SuppressWarnings("unchecked")
+    public void findWithinDistance(DistanceCalculator<T> dc,
+                                   NodeFilter<T> filter, PointND p,
+                                   double maxDistance, QueryContext ctx,
+                                   NodeVisitor<T> visitor) {
+        if (!(maxDistance >= 0))
+            throw new IllegalArgumentException("maxDistance: " + maxDistance +
+                    " < 0");
+        ctx.start(Integer.MAX_VALUE);
+        if (isEmpty())
+            return;
+        double maxDist2 = maxDistance * maxDistance;
+        if (MinDist.get(root.getMBR(converter), p) > maxDist2)
+            return;
+        ctx.push(root);
+        while (!ctx.isEmpty() && !ctx.isStopped()) {
+            Node<T> n = (Node<T>) ctx.pop();
+            n.findWithinDistance(dc, filter, p, maxDist2, converter, ctx,
+                    visitor);
+        }
+        ctx.clear();
+    }
+
     /**
      * Get the nearest neighbour of the given point
      *
@@ -348,10 +813,36 @@ public class PRTree<T> {
                                                     NodeFilter<T> filter,
                                                     int maxHits,
                                                     PointND p) {
-        if (isEmpty())
+        if (isEmpty() || maxHits <= 0)
             return Collections.emptyList();
-        NearestNeighbour<T> nn =
-                new NearestNeighbour<>(converter, filter, maxHits, root, dc, p);
-        return nn.find();
+        List<DistanceResult<T>> ret = new ArrayList<>(Math.min(maxHits, 1024));
+        Iterator<DistanceResult<T>> it = nearestNeighbourIterator(dc, filter, p);
+        while (ret.size() < maxHits && it.hasNext())
+            ret.add(it.next());
+        return ret;
+    }
+
+    /**
+     * Get the objects of this tree in increasing distance from the given
+     * point. The tree is expanded lazily, so stopping early, as soon as
+     * enough objects have been found, is cheap and there is no need to
+     * know the number of wanted objects up front.
+     * <p>
+     * <p>The DistanceCalculator must never return less than the MINDIST
+     * (the squared distance) between the point and the bounds of an object,
+     * otherwise objects may be returned out of order.
+     *
+     * @param dc     the DistanceCalculator to use.
+     * @param filter a NodeFilter that can be used to ignore some leaf nodes.
+     * @param p      the point to find the nearest neighbours to.
+     * @return an iterator over the objects and their distances, in
+     * increasing distance order.
+     */
+    public Iterator<DistanceResult<T>> nearestNeighbourIterator(
+            DistanceCalculator<T> dc, NodeFilter<T> filter, PointND p) {
+        if (filter == null)
+            throw new NullPointerException("Filter may not be null");
+        return new NearestNeighbour<>(converter, filter, root, branchFactor,
+                dc, p);
     }
 }
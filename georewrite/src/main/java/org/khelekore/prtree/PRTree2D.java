@@ -0,0 +1,564 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A Priority R-Tree specialized for two dimensions.
+ * <p>
+ * <p>The tree is bulk loaded just like a PRTree, after that the bounds of
+ * all nodes and all data entries are copied into one primitive array per
+ * ordinate. The find and nearest neighbour methods only read those arrays,
+ * with x and y hard coded, so no MBRConverter or MBR is called during a
+ * query.
+ * <p>
+ * <p>The window find, count and nearest neighbour methods are the same as
+ * the ones of PRTree. The batch find, the nearest neighbour iterator, the
+ * spatial join and the distance queries are only available on PRTree.
+ * Only the first two axes of the MBRConverter are used.
+ * <p>
+ * <p>Loading is not thread safe, but once load has returned the tree may be
+ * queried by any number of threads, the arrays are published by writing
+ * the volatile entries field last.
+ *
+ * @param <T> the data type stored in the tree
+ */
+public class PRTree2D<T> {
+
+    private final MBRConverter<T> converter;
+    private final int branchFactor;
+
+    private int height;
+    private int maxChildren;
+
+    private double[] nodeMinX;
+    private double[] nodeMinY;
+    private double[] nodeMaxX;
+    private double[] nodeMaxY;
+    /**
+     * the first child of each node, a node index for internal nodes and
+     * an entry index for leaf nodes
+     */
+    private int[] firstChild;
+    private int[] childCount;
+    /**
+     * the number of data entries below each node
+     */
+    private int[] nodeEntries;
+    /**
+     * nodes with an index below this are internal nodes
+     */
+    private int firstLeafNode;
+
+    /**
+     * written last by load, a query reads it first
+     */
+    private volatile Object[] entries;
+    private double[] entryMinX;
+    private double[] entryMinY;
+    private double[] entryMaxX;
+    private double[] entryMaxY;
+
+    /**
+     * Create a new PRTree2D using the specified branch factor.
+     *
+     * @param converter    the MBRConverter to use for this tree
+     * @param branchFactor the number of child nodes for each internal node.
+     */
+    public PRTree2D(MBRConverter<T> converter, int branchFactor) {
+        this.converter = converter;
+        this.branchFactor = branchFactor;
+    }
+
+    /**
+     * Bulk load data into this tree.
+     *
+     * @param data the collection of data to store in the tree.
+     * @throws IllegalStateException if the tree is already loaded
+     * @see PRTree#load(Collection)
+     */
+    public void load(Collection<? extends T> data) {
+        checkNotLoaded();
+        PRTree<T> tree = new PRTree<>(converter, branchFactor);
+        tree.load(data);
+        copy(tree);
+    }
+
+    /**
+     * Bulk load data into this tree using the threads of the given pool.
+     *
+     * @param data the collection of data to store in the tree.
+     * @param pool the pool that runs the parallel work
+     * @throws IllegalStateException if the tree is already loaded
+     * @see PRTree#load(Collection, ForkJoinPool)
+     */
+    public void load(Collection<? extends T> data, ForkJoinPool pool) {
+        checkNotLoaded();
+        PRTree<T> tree = new PRTree<>(converter, branchFactor);
+        tree.load(data, pool);
+        copy(tree);
+    }
+
+    private void checkNotLoaded() {
+        if (entries != null)
+            throw new IllegalStateException("Tree is already loaded");
+    }
+
+    private void copy(PRTree<T> tree) {
+        height = tree.getHeight();
+        BreadthFirstNodes<T> nodes = new BreadthFirstNodes<>(tree.getRoot());
+        int numNodes = nodes.getNumberOfNodes();
+        int numEntries = nodes.getNumberOfEntries();
+        firstLeafNode = nodes.getFirstLeafNode();
+
+        nodeMinX = new double[numNodes];
+        nodeMinY = new double[numNodes];
+        nodeMaxX = new double[numNodes];
+        nodeMaxY = new double[numNodes];
+        firstChild = new int[numNodes];
+        childCount = new int[numNodes];
+        nodeEntries = new int[numNodes];
+        Object[] es = new Object[numEntries];
+        entryMinX = new double[numEntries];
+        entryMinY = new double[numEntries];
+        entryMaxX = new double[numEntries];
+        entryMaxY = new double[numEntries];
+
+        int nextNode = 1;
+        int nextEntry = 0;
+        for (int i = 0; i < numNodes; i++) {
+            Node<T> n = nodes.get(i);
+            int s = n.size();
+            childCount[i] = s;
+            maxChildren = Math.max(maxChildren, s);
+            if (s > 0) {
+                MBR mbr = n.getMBR(converter);
+                nodeMinX[i] = mbr.getMin(0);
+                nodeMinY[i] = mbr.getMin(1);
+                nodeMaxX[i] = mbr.getMax(0);
+                nodeMaxY[i] = mbr.getMax(1);
+            }
+            if (i < firstLeafNode) {
+                firstChild[i] = nextNode;
+                nextNode += s;
+            } else {
+                LeafNode<T> ln = (LeafNode<T>) n;
+                firstChild[i] = nextEntry;
+                for (int j = 0; j < s; j++) {
+                    T t = ln.get(j);
+                    es[nextEntry] = t;
+                    entryMinX[nextEntry] = converter.getMin(0, t);
+                    entryMinY[nextEntry] = converter.getMin(1, t);
+                    entryMaxX[nextEntry] = converter.getMax(0, t);
+                    entryMaxY[nextEntry] = converter.getMax(1, t);
+                    nextEntry++;
+                }
+                nodeEntries[i] = s;
+            }
+        }
+        // children always come after their parent
+        for (int i = firstLeafNode - 1; i >= 0; i--) {
+            int sum = 0;
+            for (int c = firstChild[i], end = c + childCount[i]; c < end; c++)
+                sum += nodeEntries[c];
+            nodeEntries[i] = sum;
+        }
+        entries = es;
+    }
+
+    /**
+     * Get a 2 dimensional minimum bounding rectangle of the data
+     * stored in this tree.
+     *
+     * @return the MBR of the whole tree, null if the tree is empty
+     */
+    public MBR2D getMBR2D() {
+        if (isEmpty())
+            return null;
+        return new SimpleMBR2D(nodeMinX[0], nodeMinY[0],
+                nodeMaxX[0], nodeMaxY[0]);
+    }
+
+    /**
+     * Get a minimum bounding box of the data stored in this tree.
+     *
+     * @return the MBR of the whole tree, null if the tree is empty
+     */
+    public MBR getMBR() {
+        if (isEmpty())
+            return null;
+        return new SimpleMBR(nodeMinX[0], nodeMaxX[0],
+                nodeMinY[0], nodeMaxY[0]);
+    }
+
+    /**
+     * Get the number of data leafs in this tree.
+     *
+     * @return the total number of leafs in this tree
+     */
+    public int getNumberOfLeaves() {
+        Object[] es = entries;
+        return es == null ? 0 : es.length;
+    }
+
+    /**
+     * Check if this tree is empty
+     *
+     * @return true if the number of leafs is 0, false otherwise
+     */
+    public boolean isEmpty() {
+        return getNumberOfLeaves() == 0;
+    }
+
+    /**
+     * Get the height of this tree.
+     *
+     * @return the total height of this tree
+     */
+    public int getHeight() {
+        return entries == null ? 0 : height;
+    }
+
+    /**
+     * Get the branch factor of this tree.
+     *
+     * @return the number of child nodes for each internal node
+     */
+    public int getBranchFactor() {
+        return branchFactor;
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     List<T> resultNodes) {
+        find(xmin, ymin, xmax, ymax, resultNodes, new AcceptAll<T>());
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @param filter      a secondary filter to apply
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     final List<T> resultNodes, final NodeFilter<T> filter) {
+        if (filter == null)
+            throw new NullPointerException("Filter may not be null");
+        find(xmin, ymin, xmax, ymax, new QueryContext(), new NodeVisitor<T>() {
+            public void visit(T t) {
+                if (filter.accept(t))
+                    resultNodes.add(t);
+            }
+        });
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param query       the bounds of the query
+     * @param resultNodes the list that will be filled with the result
+     */
+    public void find(MBR query, List<T> resultNodes) {
+        find(query, resultNodes, new AcceptAll<T>());
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param query       the bounds of the query
+     * @param resultNodes the list that will be filled with the result
+     * @param filter      a secondary filter to apply to the found nodes
+     */
+    public void find(MBR query, List<T> resultNodes, NodeFilter<T> filter) {
+        find(query.getMin(0), query.getMin(1),
+                query.getMax(0), query.getMax(1), resultNodes, filter);
+    }
+
+    /**
+     * Find all objects that intersect the given rectangle.
+     *
+     * @param xmin the minimum value of the x coordinate when searching
+     * @param ymin the minimum value of the y coordinate when searching
+     * @param xmax the maximum value of the x coordinate when searching
+     * @param ymax the maximum value of the y coordinate when searching
+     * @return an iterable of the elements inside the query rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public Iterable<T> find(double xmin, double ymin,
+                            double xmax, double ymax) {
+        return find(xmin, ymin, xmax, ymax, new AcceptAll<T>());
+    }
+
+    /**
+     * Find all objects that intersect the given rectangle.
+     * Unlike PRTree the result is collected before this method returns.
+     *
+     * @param xmin   the minimum value of the x coordinate when searching
+     * @param ymin   the minimum value of the y coordinate when searching
+     * @param xmax   the maximum value of the x coordinate when searching
+     * @param ymax   the maximum value of the y coordinate when searching
+     * @param filter a secondary filter to apply to the found nodes
+     * @return an iterable of the elements inside the query rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public Iterable<T> find(double xmin, double ymin,
+                            double xmax, double ymax,
+                            NodeFilter<T> filter) {
+        List<T> ret = new ArrayList<>();
+        find(xmin, ymin, xmax, ymax, ret, filter);
+        return ret;
+    }
+
+    /**
+     * Find all objects that intersect the given rectangle.
+     *
+     * @param query the bounds of the query
+     * @return an iterable of the elements inside the query rectangle
+     */
+    public Iterable<T> find(MBR query) {
+        return find(query, new AcceptAll<T>());
+    }
+
+    /**
+     * Find all objects that intersect the given rectangle.
+     *
+     * @param query  the bounds of the query
+     * @param filter a secondary filter to apply to the found nodes
+     * @return an iterable of the elements inside the query rectangle
+     */
+    public Iterable<T> find(MBR query, NodeFilter<T> filter) {
+        return find(query.getMin(0), query.getMin(1),
+                query.getMax(0), query.getMax(1), filter);
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and hands
+     * them to the given visitor. If the context has stats they are
+     * updated. The visitor may end the query early by calling
+     * {@link QueryContext#stop}.
+     * <p>
+     * <p>This method does not allocate anything, the traversal uses the
+     * int stack of the given context.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     QueryContext ctx, NodeVisitor<T> visitor) {
+        find(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, ctx, visitor);
+    }
+
+    /**
+     * Finds objects that intersect the given rectangle and hands them to
+     * the given visitor, the traversal ends as soon as limit objects have
+     * been found or the visitor calls {@link QueryContext#stop}.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param limit   the maximum number of objects to find
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    @SuppressWarnings("unchecked")
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     int limit, QueryContext ctx, NodeVisitor<T> visitor) {
+        PRTree.validateRect(xmin, ymin, xmax, ymax);
+        ctx.start(limit);
+        Object[] es = entries;
+        if (es == null || es.length == 0 || ctx.isStopped())
+            return;
+        QueryStats stats = ctx.getStats();
+        int[] stack = ctx.getInts(height * maxChildren + 1);
+        int top = 0;
+        if (!(nodeMaxX[0] < xmin || nodeMinX[0] > xmax ||
+                nodeMaxY[0] < ymin || nodeMinY[0] > ymax))
+            stack[top++] = 0;
+        while (top > 0 && !ctx.isStopped()) {
+            int n = stack[--top];
+            int first = firstChild[n];
+            int end = first + childCount[n];
+            if (n < firstLeafNode) {
+                for (int c = first; c < end; c++) {
+                    if (!(nodeMaxX[c] < xmin || nodeMinX[c] > xmax ||
+                            nodeMaxY[c] < ymin || nodeMinY[c] > ymax))
+                        stack[top++] = c;
+                }
+            } else {
+                int hits = 0;
+                int e = first;
+                while (e < end) {
+                    if (!(entryMaxX[e] < xmin || entryMinX[e] > xmax ||
+                            entryMaxY[e] < ymin || entryMinY[e] > ymax)) {
+                        hits++;
+                        visitor.visit((T) es[e++]);
+                        if (ctx.hit())
+                            break;
+                    } else {
+                        e++;
+                    }
+                }
+                if (stats != null) {
+                    stats.leavesVisited++;
+                    stats.entriesTested += e - first;
+                    stats.hits += hits;
+                }
+            }
+            if (stats != null)
+                stats.nodesVisited++;
+        }
+    }
+
+    /**
+     * Count the objects that intersect the given rectangle.
+     * <p>
+     * <p>Every node knows the number of objects below it, so a node that
+     * is fully inside the query is counted without visiting it.
+     *
+     * @param xmin the minimum value of the x coordinate when searching
+     * @param ymin the minimum value of the y coordinate when searching
+     * @param xmax the maximum value of the x coordinate when searching
+     * @param ymax the maximum value of the y coordinate when searching
+     * @return the number of objects that intersect the rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public int count(double xmin, double ymin, double xmax, double ymax) {
+        PRTree.validateRect(xmin, ymin, xmax, ymax);
+        Object[] es = entries;
+        if (es == null || es.length == 0)
+            return 0;
+        int[] stack = new int[height * maxChildren + 1];
+        int top = 0;
+        int ret = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int n = stack[--top];
+            if (nodeMaxX[n] < xmin || nodeMinX[n] > xmax ||
+                    nodeMaxY[n] < ymin || nodeMinY[n] > ymax)
+                continue;
+            if (nodeMinX[n] >= xmin && nodeMaxX[n] <= xmax &&
+                    nodeMinY[n] >= ymin && nodeMaxY[n] <= ymax) {
+                ret += nodeEntries[n];
+                continue;
+            }
+            int first = firstChild[n];
+            int end = first + childCount[n];
+            if (n < firstLeafNode) {
+                for (int c = first; c < end; c++)
+                    stack[top++] = c;
+            } else {
+                for (int e = first; e < end; e++) {
+                    if (!(entryMaxX[e] < xmin || entryMinX[e] > xmax ||
+                            entryMaxY[e] < ymin || entryMinY[e] > ymax))
+                        ret++;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Count the objects that intersect the given rectangle.
+     *
+     * @param query the bounds of the query
+     * @return the number of objects that intersect the query
+     */
+    public int count(MBR query) {
+        return count(query.getMin(0), query.getMin(1),
+                query.getMax(0), query.getMax(1));
+    }
+
+    /**
+     * Get the nearest neighbour of the given point
+     *
+     * @param dc      the DistanceCalculator to use.
+     * @param filter  a NodeFilter that can be used to ignore some leaf nodes.
+     * @param maxHits the maximum number of entries to find.
+     * @param p       the point to find the nearest neighbour to.
+     * @return A List of DistanceResult with up to maxHits results.
+     * Will return an empty list if this tree is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public List<DistanceResult<T>> nearestNeighbour(DistanceCalculator<T> dc,
+                                                    NodeFilter<T> filter,
+                                                    int maxHits,
+                                                    PointND p) {
+        Object[] es = entries;
+        if (es == null || es.length == 0 || maxHits <= 0)
+            return Collections.emptyList();
+        double x = p.getOrd(0);
+        double y = p.getOrd(1);
+        DoubleIntHeap queue = new DoubleIntHeap(height * branchFactor);
+        // the results found so far, a max heap by using negated distances
+        DoubleIntHeap found = new DoubleIntHeap(maxHits + 1);
+        queue.add(MinDist2D.get(nodeMinX[0], nodeMinY[0],
+                nodeMaxX[0], nodeMaxY[0], x, y), 0);
+        while (!queue.isEmpty()) {
+            double minDist = queue.peekKey();
+            int n = queue.peekValue();
+            queue.remove();
+            if (found.size() == maxHits && minDist > -found.peekKey())
+                break;
+            int first = firstChild[n];
+            int end = first + childCount[n];
+            if (n < firstLeafNode) {
+                for (int c = first; c < end; c++) {
+                    double d = MinDist2D.get(nodeMinX[c], nodeMinY[c],
+                            nodeMaxX[c], nodeMaxY[c], x, y);
+                    if (found.size() < maxHits || d <= -found.peekKey())
+                        queue.add(d, c);
+                }
+            } else {
+                for (int e = first; e < end; e++) {
+                    T t = (T) es[e];
+                    if (!filter.accept(t))
+                        continue;
+                    double dist = dc.distanceTo(t, p);
+                    if (found.size() < maxHits) {
+                        found.add(-dist, e);
+                    } else if (dist < -found.peekKey()) {
+                        found.remove();
+                        found.add(-dist, e);
+                    }
+                }
+            }
+        }
+        // the heap gives the farthest result first
+        List<DistanceResult<T>> ret = new ArrayList<>(found.size());
+        while (!found.isEmpty()) {
+            ret.add(new DistanceResult<>((T) es[found.peekValue()],
+                    -found.peekKey()));
+            found.remove();
+        }
+        Collections.reverse(ret);
+        return ret;
+    }
+}
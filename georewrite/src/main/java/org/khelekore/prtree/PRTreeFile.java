@@ -0,0 +1,287 @@
+package org.khelekore.prtree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a loaded PRTree to a file and maps such a file back as a
+ * BufferPRTree, so a tree can be used right after a restart without
+ * bulk loading it again.
+ * <p>
+ * <p>The file holds the node bounds, the child layout and the bounds of the
+ * data entries, but not the data itself. Each entry is stored as its ordinal
+ * in the data list the tree was built from, so the same list, in the same
+ * order, has to be given when the file is mapped. The caller chooses a data
+ * version, for example the modification time of the source data, that is
+ * stored in the header and a file with another version is rejected.
+ */
+public class PRTreeFile {
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Do not instantiate
+     */
+    private PRTreeFile() {
+        // empty
+    }
+
+    /**
+     * Write the given tree to a file. The file is first written to a
+     * temporary file that is then renamed, so a reader never sees a
+     * partially written file.
+     *
+     * @param tree        a loaded tree
+     * @param data        the data the tree was loaded with, the position of
+     *                    each object in this list is stored in the file
+     * @param dataVersion the version of the data, checked when the file is
+     *                    mapped
+     * @param file        the file to write
+     * @param <T>         the data type stored in the tree
+     * @throws IOException           if the file can not be written
+     * @throws IllegalStateException if the tree is not loaded
+     */
+    public static <T> void write(PRTree<T> tree, List<? extends T> data,
+                                 long dataVersion, File file)
+            throws IOException {
+        Node<T> root = tree.getRoot();
+        if (root == null)
+            throw new IllegalStateException("Tree is not loaded");
+        MBRConverter<T> converter = tree.getConverter();
+        BreadthFirstNodes<T> nodes = new BreadthFirstNodes<>(root);
+        BufferLayout layout = new BufferLayout(converter.getDimensions(),
+                tree.getBranchFactor(), tree.getHeight(),
+                nodes.getNumberOfNodes(), nodes.getFirstLeafNode(),
+                nodes.getNumberOfEntries());
+        if (layout.numEntries != data.size())
+            throw new IllegalArgumentException("Tree has " +
+                    layout.numEntries + " entries, data has " + data.size());
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BodyWriter w = new BodyWriter(channel, BufferLayout.HEADER_SIZE);
+            writeBody(layout, nodes, converter, w);
+            writeOrdinals(layout, nodes, data, w);
+            w.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(BufferLayout.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(BufferLayout.MAGIC_POS, BufferLayout.MAGIC);
+            header.putInt(BufferLayout.FORMAT_VERSION_POS,
+                    BufferLayout.FORMAT_VERSION);
+            header.putLong(BufferLayout.DATA_VERSION_POS, dataVersion);
+            header.putInt(BufferLayout.DIMENSIONS_POS, layout.dimensions);
+            header.putInt(BufferLayout.BRANCH_FACTOR_POS, layout.branchFactor);
+            header.putInt(BufferLayout.HEIGHT_POS, layout.height);
+            header.putInt(BufferLayout.NUM_NODES_POS, layout.numNodes);
+            header.putInt(BufferLayout.FIRST_LEAF_NODE_POS,
+                    layout.firstLeafNode);
+            header.putInt(BufferLayout.NUM_ENTRIES_POS, layout.numEntries);
+            header.putLong(BufferLayout.CHECKSUM_POS, w.crc.getValue());
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write all of the body except for the entry ordinals.
+     */
+    static <T> void writeBody(BufferLayout layout, BreadthFirstNodes<T> nodes,
+                              MBRConverter<T> converter, BodyOutput w)
+            throws IOException {
+        int dims = layout.dimensions;
+        for (int i = 0; i < layout.numNodes; i++) {
+            Node<T> n = nodes.get(i);
+            MBR mbr = n.size() > 0 ? n.getMBR(converter) : null;
+            for (int axis = 0; axis < dims; axis++) {
+                w.putDouble(mbr == null ? 0 : mbr.getMin(axis));
+                w.putDouble(mbr == null ? 0 : mbr.getMax(axis));
+            }
+        }
+        for (int i = layout.firstLeafNode; i < layout.numNodes; i++) {
+            LeafNode<T> ln = (LeafNode<T>) nodes.get(i);
+            for (int j = 0, s = ln.size(); j < s; j++) {
+                T t = ln.get(j);
+                for (int axis = 0; axis < dims; axis++) {
+                    w.putDouble(converter.getMin(axis, t));
+                    w.putDouble(converter.getMax(axis, t));
+                }
+            }
+        }
+        int nextNode = 1;
+        int nextEntry = 0;
+        for (int i = 0; i < layout.numNodes; i++) {
+            if (i < layout.firstLeafNode) {
+                w.putInt(nextNode);
+                nextNode += nodes.get(i).size();
+            } else {
+                w.putInt(nextEntry);
+                nextEntry += nodes.get(i).size();
+            }
+        }
+        w.align();
+        for (int i = 0; i < layout.numNodes; i++)
+            w.putInt(nodes.get(i).size());
+        w.align();
+    }
+
+    private static <T> void writeOrdinals(BufferLayout layout,
+                                          BreadthFirstNodes<T> nodes,
+                                          List<? extends T> data,
+                                          BodyOutput w) throws IOException {
+        Map<Object, Integer> ordinals = new IdentityHashMap<>(data.size());
+        for (int i = 0, s = data.size(); i < s; i++)
+            ordinals.put(data.get(i), i);
+        for (int i = layout.firstLeafNode; i < layout.numNodes; i++) {
+            LeafNode<T> ln = (LeafNode<T>) nodes.get(i);
+            for (int j = 0, s = ln.size(); j < s; j++) {
+                Integer ordinal = ordinals.get(ln.get(j));
+                if (ordinal == null)
+                    throw new IllegalArgumentException("Tree entry not in data: " +
+                            ln.get(j));
+                w.putInt(ordinal);
+            }
+        }
+        w.align();
+    }
+
+    /**
+     * Map a file written by {@link #write} as a read only tree.
+     * <p>
+     * <p>Nothing is loaded onto the heap, queries read the mapped file.
+     * The file is rejected if it was not written by a compatible version of
+     * this class, if it was written for another data version or if the
+     * number of entries does not match the data.
+     *
+     * @param file           the file to map
+     * @param data           the data the tree was built from, in the same
+     *                       order as when the file was written
+     * @param dataVersion    the expected data version
+     * @param verifyChecksum if true the whole file is read once to check
+     *                       its checksum
+     * @param <T>            the data type stored in the tree
+     * @return the mapped tree
+     * @throws IOException if the file can not be read or is rejected
+     */
+    public static <T> BufferPRTree<T> map(File file, List<? extends T> data,
+                                          long dataVersion,
+                                          boolean verifyChecksum)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BufferLayout.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException("Truncated header: " + file);
+            }
+            if (header.getInt(BufferLayout.MAGIC_POS) != BufferLayout.MAGIC)
+                throw new IOException("Not a tree file: " + file);
+            int formatVersion = header.getInt(BufferLayout.FORMAT_VERSION_POS);
+            if (formatVersion != BufferLayout.FORMAT_VERSION)
+                throw new IOException("Unsupported format version " +
+                        formatVersion + ": " + file);
+            long fileDataVersion = header.getLong(BufferLayout.DATA_VERSION_POS);
+            if (fileDataVersion != dataVersion)
+                throw new IOException("Stale tree file, data version " +
+                        fileDataVersion + " != " + dataVersion + ": " + file);
+            BufferLayout layout = new BufferLayout(
+                    header.getInt(BufferLayout.DIMENSIONS_POS),
+                    header.getInt(BufferLayout.BRANCH_FACTOR_POS),
+                    header.getInt(BufferLayout.HEIGHT_POS),
+                    header.getInt(BufferLayout.NUM_NODES_POS),
+                    header.getInt(BufferLayout.FIRST_LEAF_NODE_POS),
+                    header.getInt(BufferLayout.NUM_ENTRIES_POS));
+            if (layout.numEntries != data.size())
+                throw new IOException("Stale tree file, " + layout.numEntries +
+                        " entries but data has " + data.size() + ": " + file);
+            if (channel.size() != BufferLayout.HEADER_SIZE + layout.bodySize)
+                throw new IOException("Wrong file size " + channel.size() +
+                        ": " + file);
+            ChunkedBuffer body = ChunkedBuffer.map(channel,
+                    BufferLayout.HEADER_SIZE, layout.bodySize);
+            if (verifyChecksum) {
+                CRC32 crc = new CRC32();
+                for (ByteBuffer chunk : body.getChunks())
+                    crc.update(chunk.duplicate());
+                if (crc.getValue() != header.getLong(BufferLayout.CHECKSUM_POS))
+                    throw new IOException("Checksum mismatch: " + file);
+            }
+            return new BufferPRTree<>(layout, body, data);
+        }
+    }
+
+    /**
+     * Where the body is written, in order.
+     */
+    interface BodyOutput {
+        void putDouble(double d) throws IOException;
+
+        void putInt(int i) throws IOException;
+
+        /**
+         * Pad to the next 8 byte boundary.
+         */
+        void align() throws IOException;
+    }
+
+    /**
+     * Writes the body through a buffer and keeps a checksum of it.
+     */
+    private static class BodyWriter implements BodyOutput {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(
+                WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long position;
+        private long written;
+
+        public BodyWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        public void putDouble(double d) throws IOException {
+            if (buf.remaining() < 8)
+                flush();
+            buf.putDouble(d);
+            written += 8;
+        }
+
+        public void putInt(int i) throws IOException {
+            if (buf.remaining() < 4)
+                flush();
+            buf.putInt(i);
+            written += 4;
+        }
+
+        public void align() throws IOException {
+            if ((written & 7) != 0)
+                putInt(0);
+        }
+
+        public void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining())
+                position += channel.write(buf, position);
+            buf.clear();
+        }
+    }
+}
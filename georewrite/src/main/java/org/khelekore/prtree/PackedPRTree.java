@@ -0,0 +1,493 @@
+package org.khelekore.prtree;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A read only Priority R-Tree that keeps the nodes in flat arrays
+ * instead of a graph of node objects.
+ * <p>
+ * <p>The nodes are numbered in breadth first order, so the children of
+ * a node are always stored next to each other and the children of a
+ * node end where the children of the next node start. All node bounds
+ * are stored in one double array and the children are found through int
+ * offsets, so no node objects or MBR objects are kept.
+ * <p>
+ * <p>A PackedPRTree is created from a loaded PRTree, after that the
+ * PRTree can be dropped. By default the data entries are tested through
+ * the MBRConverter of the tree. A tree created with a mapper instead
+ * copies the bounds of each entry into a double array and stores the
+ * mapped values, this uses more memory than the converter when the data
+ * objects are kept anyway, but lets the tree drop objects that only held
+ * the bounds.
+ *
+ * @param <T> the data type stored in the tree
+ */
+public class PackedPRTree<T> {
+
+    private final int dimensions;
+    private final int height;
+    /**
+     * the largest number of children of any node, bounds the depth first
+     * stack of a query to height * maxChildren + 1
+     */
+    private final int maxChildren;
+
+    /**
+     * min, max, min, max ... for each node, in breadth first order
+     */
+    private final double[] nodeBounds;
+    /**
+     * the first child node of each internal node, followed by the number
+     * of nodes, so the children of node n are firstChild[n] up to
+     * firstChild[n + 1]
+     */
+    private final int[] firstChild;
+    /**
+     * the first entry of each leaf node, followed by the number of
+     * entries, indexed by node - firstLeafNode
+     */
+    private final int[] firstEntry;
+    /**
+     * the number of data entries below each node
+     */
+    private final int[] nodeEntries;
+    /**
+     * nodes with an index below this are internal nodes
+     */
+    private final int firstLeafNode;
+
+    private final Object[] entries;
+    /**
+     * the converter for the entries, null if entryBounds is used
+     */
+    private final MBRConverter<T> converter;
+    /**
+     * min, max, min, max ... for each entry, in the same order as entries,
+     * null if the entries are tested through the converter
+     */
+    private final double[] entryBounds;
+
+    /**
+     * Pack the given tree, the data entries are kept and tested through
+     * the converter of the tree.
+     *
+     * @param tree a loaded PRTree
+     * @throws IllegalStateException if the tree is not loaded
+     */
+    public PackedPRTree(PRTree<T> tree) {
+        this(tree, null, tree.getConverter());
+    }
+
+    /**
+     * Pack the given tree and store a mapped value for each entry, the
+     * bounds of the entries are copied since the converter can not be
+     * used on the mapped values.
+     *
+     * @param tree   a loaded PRTree
+     * @param mapper gives the value to store for each entry of the tree
+     * @param <S>    the data type of the given tree
+     * @throws IllegalStateException if the tree is not loaded
+     */
+    public <S> PackedPRTree(PRTree<S> tree,
+                            Function<? super S, ? extends T> mapper) {
+        this(tree, mapper, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <S> PackedPRTree(PRTree<S> tree,
+                             Function<? super S, ? extends T> mapper,
+                             MBRConverter<T> entryConverter) {
+        Node<S> root = tree.getRoot();
+        if (root == null)
+            throw new IllegalStateException("Tree is not loaded");
+        MBRConverter<S> converter = tree.getConverter();
+        dimensions = converter.getDimensions();
+        height = tree.getHeight();
+        this.converter = entryConverter;
+
+        BreadthFirstNodes<S> nodes = new BreadthFirstNodes<>(root);
+        int numNodes = nodes.getNumberOfNodes();
+        int numEntries = nodes.getNumberOfEntries();
+        firstLeafNode = nodes.getFirstLeafNode();
+
+        int stride = 2 * dimensions;
+        nodeBounds = new double[numNodes * stride];
+        firstChild = new int[firstLeafNode + 1];
+        firstEntry = new int[numNodes - firstLeafNode + 1];
+        nodeEntries = new int[numNodes];
+        entries = new Object[numEntries];
+        entryBounds = mapper == null ? null : new double[numEntries * stride];
+
+        int nextNode = 1;
+        int nextEntry = 0;
+        int max = 0;
+        for (int i = 0; i < numNodes; i++) {
+            Node<S> n = nodes.get(i);
+            int s = n.size();
+            max = Math.max(max, s);
+            if (s > 0)
+                copyBounds(n.getMBR(converter), nodeBounds, i * stride);
+            if (i < firstLeafNode) {
+                firstChild[i] = nextNode;
+                nextNode += s;
+            } else {
+                LeafNode<S> ln = (LeafNode<S>) n;
+                firstEntry[i - firstLeafNode] = nextEntry;
+                for (int j = 0; j < s; j++) {
+                    S t = ln.get(j);
+                    if (mapper == null) {
+                        entries[nextEntry] = t;
+                    } else {
+                        entries[nextEntry] = mapper.apply(t);
+                        int p = nextEntry * stride;
+                        for (int axis = 0; axis < dimensions; axis++) {
+                            entryBounds[p++] = converter.getMin(axis, t);
+                            entryBounds[p++] = converter.getMax(axis, t);
+                        }
+                    }
+                    nextEntry++;
+                }
+                nodeEntries[i] = s;
+            }
+        }
+        firstChild[firstLeafNode] = numNodes;
+        firstEntry[numNodes - firstLeafNode] = numEntries;
+        // children always come after their parent
+        for (int i = firstLeafNode - 1; i >= 0; i--) {
+            int sum = 0;
+            for (int c = firstChild[i]; c < firstChild[i + 1]; c++)
+                sum += nodeEntries[c];
+            nodeEntries[i] = sum;
+        }
+        maxChildren = max;
+    }
+
+    private void copyBounds(MBR mbr, double[] dest, int pos) {
+        for (int axis = 0; axis < dimensions; axis++) {
+            dest[pos++] = mbr.getMin(axis);
+            dest[pos++] = mbr.getMax(axis);
+        }
+    }
+
+    /**
+     * Get an N dimensional minimum bounding box of the data stored
+     * in this tree.
+     *
+     * @return the MBR of the whole tree, null if the tree is empty
+     */
+    public MBR getMBR() {
+        if (isEmpty())
+            return null;
+        double[] values = new double[2 * dimensions];
+        System.arraycopy(nodeBounds, 0, values, 0, values.length);
+        return new SimpleMBR(values);
+    }
+
+    /**
+     * Get a 2 dimensional minimum bounding rectangle of the data
+     * stored in this tree.
+     *
+     * @return the MBR of the whole tree, null if the tree is empty
+     */
+    public MBR2D getMBR2D() {
+        if (isEmpty())
+            return null;
+        return new SimpleMBR2D(nodeBounds[0], nodeBounds[2],
+                nodeBounds[1], nodeBounds[3]);
+    }
+
+    /**
+     * Get the number of data leafs in this tree.
+     *
+     * @return the total number of leafs in this tree
+     */
+    public int getNumberOfLeaves() {
+        return entries.length;
+    }
+
+    /**
+     * Get the number of nodes, internal and leaf nodes, in this tree.
+     *
+     * @return the total number of nodes in this tree
+     */
+    public int getNumberOfNodes() {
+        return nodeEntries.length;
+    }
+
+    /**
+     * Check if this tree is empty
+     *
+     * @return true if the number of leafs is 0, false otherwise
+     */
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    /**
+     * Get the height of this tree.
+     *
+     * @return the total height of this tree
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     List<T> resultNodes) {
+        find(xmin, ymin, xmax, ymax, resultNodes, new AcceptAll<T>());
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @param filter      a secondary filter to apply
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     List<T> resultNodes, NodeFilter<T> filter) {
+        find(new double[]{xmin, xmax, ymin, ymax}, 2, resultNodes, filter);
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param query       the bounds of the query
+     * @param resultNodes the list that will be filled with the result
+     * @throws IllegalArgumentException if max &lt; min for any axis
+     */
+    public void find(MBR query, List<T> resultNodes) {
+        find(query, resultNodes, new AcceptAll<T>());
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param query       the bounds of the query
+     * @param resultNodes the list that will be filled with the result
+     * @param filter      a secondary filter to apply to the found nodes
+     * @throws IllegalArgumentException if max &lt; min for any axis
+     */
+    public void find(MBR query, List<T> resultNodes, NodeFilter<T> filter) {
+        double[] q = new double[2 * dimensions];
+        int p = 0;
+        for (int axis = 0; axis < dimensions; axis++) {
+            q[p++] = query.getMin(axis);
+            q[p++] = query.getMax(axis);
+        }
+        find(q, dimensions, resultNodes, filter);
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and hands
+     * them to the given visitor. If the context has stats they are
+     * updated. The visitor may end the query early by calling
+     * {@link QueryContext#stop}.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     * <p>
+     * <p>This method does not allocate anything, the traversal uses the
+     * int stack of the given context.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     QueryContext ctx, NodeVisitor<T> visitor) {
+        find(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, ctx, visitor);
+    }
+
+    /**
+     * Finds objects that intersect the given rectangle and hands them to
+     * the given visitor, the traversal ends as soon as limit objects have
+     * been found or the visitor calls {@link QueryContext#stop}.
+     * Note, this find method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param limit   the maximum number of objects to find
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     int limit, QueryContext ctx, NodeVisitor<T> visitor) {
+        double[] q = ctx.getQuery(4);
+        q[0] = xmin;
+        q[1] = xmax;
+        q[2] = ymin;
+        q[3] = ymax;
+        find(q, 2, limit, ctx, visitor);
+    }
+
+    private void find(double[] q, int queryDimensions,
+                      final List<T> resultNodes, final NodeFilter<T> filter) {
+        if (filter == null)
+            throw new NullPointerException("Filter may not be null");
+        NodeVisitor<T> visitor = new NodeVisitor<T>() {
+            public void visit(T t) {
+                if (filter.accept(t))
+                    resultNodes.add(t);
+            }
+        };
+        find(q, queryDimensions, Integer.MAX_VALUE, new QueryContext(), visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void find(double[] q, int queryDimensions, int limit,
+                      QueryContext ctx, NodeVisitor<T> visitor) {
+        validateQuery(q, queryDimensions);
+        ctx.start(limit);
+        if (isEmpty() || ctx.isStopped())
+            return;
+        QueryStats stats = ctx.getStats();
+        int[] stack = ctx.getInts(height * maxChildren + 1);
+        int top = 0;
+        if (intersects(nodeBounds, 0, q, queryDimensions))
+            stack[top++] = 0;
+        while (top > 0 && !ctx.isStopped()) {
+            int n = stack[--top];
+            if (n < firstLeafNode) {
+                for (int c = firstChild[n], end = firstChild[n + 1]; c < end; c++) {
+                    if (intersects(nodeBounds, c, q, queryDimensions))
+                        stack[top++] = c;
+                }
+            } else {
+                int hits = 0;
+                int first = firstEntry[n - firstLeafNode];
+                int end = firstEntry[n - firstLeafNode + 1];
+                int e = first;
+                while (e < end) {
+                    if (entryIntersects(e++, q, queryDimensions)) {
+                        hits++;
+                        visitor.visit((T) entries[e - 1]);
+                        if (ctx.hit())
+                            break;
+                    }
+                }
+                if (stats != null) {
+                    stats.leavesVisited++;
+                    stats.entriesTested += e - first;
+                    stats.hits += hits;
+                }
+            }
+            if (stats != null)
+                stats.nodesVisited++;
+        }
+    }
+
+    /**
+     * Count the objects that intersect the given rectangle, the same
+     * objects that find would report. A node that is fully inside the
+     * query is counted without visiting it.
+     * Note, this count method will only use two dimensions, no matter
+     * how many dimensions the tree actually has.
+     *
+     * @param xmin the minimum value of the x coordinate when searching
+     * @param ymin the minimum value of the y coordinate when searching
+     * @param xmax the maximum value of the x coordinate when searching
+     * @param ymax the maximum value of the y coordinate when searching
+     * @return the number of objects that intersect the rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public int count(double xmin, double ymin, double xmax, double ymax) {
+        double[] q = {xmin, xmax, ymin, ymax};
+        validateQuery(q, 2);
+        if (isEmpty() || !intersects(nodeBounds, 0, q, 2))
+            return 0;
+        int[] stack = new int[height * maxChildren + 1];
+        int top = 0;
+        int ret = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int n = stack[--top];
+            if (contains(q, n)) {
+                ret += nodeEntries[n];
+            } else if (n < firstLeafNode) {
+                for (int c = firstChild[n], end = firstChild[n + 1]; c < end; c++) {
+                    if (intersects(nodeBounds, c, q, 2))
+                        stack[top++] = c;
+                }
+            } else {
+                for (int e = firstEntry[n - firstLeafNode],
+                     end = firstEntry[n - firstLeafNode + 1]; e < end; e++) {
+                    if (entryIntersects(e, q, 2))
+                        ret++;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private boolean contains(double[] q, int node) {
+        int p = node * 2 * dimensions;
+        return nodeBounds[p] >= q[0] && nodeBounds[p + 1] <= q[1] &&
+                nodeBounds[p + 2] >= q[2] && nodeBounds[p + 3] <= q[3];
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean entryIntersects(int entry, double[] q,
+                                    int queryDimensions) {
+        if (entryBounds != null)
+            return intersects(entryBounds, entry, q, queryDimensions);
+        T t = (T) entries[entry];
+        for (int axis = 0; axis < queryDimensions; axis++) {
+            if (converter.getMax(axis, t) < q[2 * axis] ||
+                    converter.getMin(axis, t) > q[2 * axis + 1])
+                return false;
+        }
+        return true;
+    }
+
+    private boolean intersects(double[] bounds, int index,
+                               double[] q, int queryDimensions) {
+        int p = index * 2 * dimensions;
+        for (int i = 0; i < 2 * queryDimensions; i += 2) {
+            if (bounds[p + i + 1] < q[i] || bounds[p + i] > q[i + 1])
+                return false;
+        }
+        return true;
+    }
+
+    private void validateQuery(double[] q, int queryDimensions) {
+        for (int axis = 0; axis < queryDimensions; axis++) {
+            double min = q[2 * axis];
+            double max = q[2 * axis + 1];
+            if (max < min)
+                throw new IllegalArgumentException("max: " + max +
+                        " < min: " + min +
+                        ", axis: " + axis);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the objects that intersect a 2 dimensional query by splitting
+ * the tree into fork join tasks. Each task collects into its own buffer
+ * and hands full buffers to the sink, so the threads only meet in the
+ * sink.
+ *
+ * @param <T> the data type stored in the tree
+ */
+class ParallelFinder<T> {
+    /**
+     * Subtrees with at most this many entries are searched by one task
+     */
+    private static final int TASK_ENTRIES = 8192;
+    /**
+     * The number of objects a task collects before it calls the sink
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final MBRConverter<T> converter;
+    private final double xmin;
+    private final double ymin;
+    private final double xmax;
+    private final double ymax;
+    private final ResultSink<T> sink;
+
+    public ParallelFinder(MBRConverter<T> converter, double xmin, double ymin,
+                          double xmax, double ymax, ResultSink<T> sink) {
+        this.converter = converter;
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.xmax = xmax;
+        this.ymax = ymax;
+        this.sink = sink;
+    }
+
+    /**
+     * Estimate the number of hits by summing the entry counts of the
+     * nodes on the second level below the given node that intersect the
+     * query. This never underestimates and only looks at a few nodes.
+     */
+    public int estimate(Node<T> root) {
+        if (!intersects(root))
+            return 0;
+        if (!(root instanceof InternalNode))
+            return root.getEntryCount();
+        InternalNode<T> in = (InternalNode<T>) root;
+        int ret = 0;
+        for (int i = 0, s = in.size(); i < s; i++) {
+            Node<T> c = in.get(i);
+            if (!intersects(c))
+                continue;
+            if (c instanceof InternalNode) {
+                InternalNode<T> ic = (InternalNode<T>) c;
+                for (int j = 0, t = ic.size(); j < t; j++) {
+                    Node<T> cc = ic.get(j);
+                    if (intersects(cc))
+                        ret += cc.getEntryCount();
+                }
+            } else {
+                ret += c.getEntryCount();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Search the tree sequentially in the calling thread.
+     */
+    public void find(Node<T> root) {
+        if (intersects(root))
+            findSubtree(root);
+    }
+
+    /**
+     * Search the tree in the given pool and wait for all tasks.
+     */
+    public void find(Node<T> root, ForkJoinPool pool) {
+        if (intersects(root))
+            pool.invoke(new FindTask(root));
+    }
+
+    private class FindTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Node<T> node;
+
+        public FindTask(Node<T> node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (node.getEntryCount() <= TASK_ENTRIES ||
+                    !(node instanceof InternalNode)) {
+                findSubtree(node);
+                return;
+            }
+            InternalNode<T> in = (InternalNode<T>) node;
+            List<FindTask> tasks = new ArrayList<>(in.size());
+            for (int i = 0, s = in.size(); i < s; i++) {
+                Node<T> c = in.get(i);
+                if (intersects(c))
+                    tasks.add(new FindTask(c));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void findSubtree(Node<T> node) {
+        Collector collector = new Collector();
+        QueryContext ctx = new QueryContext();
+        ctx.push(node);
+        while (!ctx.isEmpty()) {
+            Node<T> n = (Node<T>) ctx.pop();
+            n.find(xmin, ymin, xmax, ymax, converter, ctx, collector);
+        }
+        collector.flush();
+    }
+
+    /**
+     * Collects the found objects of one task.
+     */
+    private class Collector implements NodeVisitor<T> {
+        private List<T> buffer = new ArrayList<>();
+
+        public void visit(T t) {
+            buffer.add(t);
+            if (buffer.size() == CHUNK_SIZE)
+                flush();
+        }
+
+        public void flush() {
+            if (buffer.isEmpty())
+                return;
+            sink.add(buffer);
+            buffer = new ArrayList<>();
+        }
+    }
+
+    private boolean intersects(Node<T> n) {
+        MBR m = n.getMBR(converter);
+        return !(m.getMax(0) < xmin || m.getMin(0) > xmax ||
+                m.getMax(1) < ymin || m.getMin(1) > ymax);
+    }
+}
@@ -0,0 +1,38 @@
+package org.khelekore.prtree;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The priority R-tree loader, builds each level with a LeafBuilder.
+ */
+class PriorityBulkLoader implements BulkLoader {
+    private final ForkJoinPool pool;
+    private final boolean lowMemory;
+
+    public PriorityBulkLoader(ForkJoinPool pool, boolean lowMemory) {
+        this.pool = pool;
+        this.lowMemory = lowMemory;
+    }
+
+    public <T, N> void buildNodes(final Collection<? extends T> elements,
+                                  final MBRConverter<T> converter,
+                                  final int branchFactor,
+                                  final NodeFactory<N> nf,
+                                  final List<N> nodes) {
+        if (pool != null && ForkJoinTask.getPool() != pool) {
+            // run inside the pool so that parallel sorts and streams use it
+            pool.invoke(ForkJoinTask.adapt(new Runnable() {
+                public void run() {
+                    buildNodes(elements, converter, branchFactor, nf, nodes);
+                }
+            }));
+            return;
+        }
+        LeafBuilder lb = new LeafBuilder(converter.getDimensions(),
+                branchFactor, pool, lowMemory);
+        lb.buildLeafs(elements, new DataComparators<>(converter), nf, nodes);
+    }
+}
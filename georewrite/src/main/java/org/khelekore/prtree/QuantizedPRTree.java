@@ -0,0 +1,394 @@
+package org.khelekore.prtree;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A read only, 2 dimensional Priority R-Tree that stores all bounds as
+ * 31 bit integers relative to the extent of the tree.
+ * <p>
+ * <p>The layout is the same as for {@link PackedPRTree}, but each bound
+ * takes 4 bytes instead of 8 and no MBR objects are kept, which cuts the
+ * memory used by the index several times. Minimums are rounded down and
+ * maximums up, so a quantized box always contains the real box and no
+ * object that intersects a query is ever missed. An object that ends
+ * within one grid cell (the extent divided by 2^31) of the query may be
+ * reported even though it does not quite intersect it.
+ * <p>
+ * <p>Only the first two axes of the tree are used.
+ *
+ * @param <T> the data type stored in the tree
+ */
+public class QuantizedPRTree<T> {
+
+    private static final int MAX_CELL = Integer.MAX_VALUE;
+
+    private final int branchFactor;
+    private final int height;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double scaleX;
+    private final double scaleY;
+
+    /**
+     * xmin, ymin, xmax, ymax for each node, in breadth first order
+     */
+    private final int[] nodeBounds;
+    /**
+     * the first child of each node, a node index for internal nodes and
+     * an entry index for leaf nodes
+     */
+    private final int[] firstChild;
+    /**
+     * the number of children of each node
+     */
+    private final int[] childCount;
+    /**
+     * the number of data entries below each node
+     */
+    private final int[] nodeEntries;
+    /**
+     * nodes with an index below this are internal nodes
+     */
+    private final int firstLeafNode;
+
+    private final Object[] entries;
+    /**
+     * xmin, ymin, xmax, ymax for each entry, in the same order as entries
+     */
+    private final int[] entryBounds;
+
+    /**
+     * Quantize the given tree.
+     *
+     * @param tree a loaded PRTree
+     * @throws IllegalStateException if the tree is not loaded
+     */
+    public QuantizedPRTree(PRTree<T> tree) {
+        this(tree, Function.<T>identity());
+    }
+
+    /**
+     * Quantize the given tree and store a mapped value for each entry,
+     * this lets the tree drop the objects that only held the bounds.
+     *
+     * @param tree   a loaded PRTree
+     * @param mapper gives the value to store for each entry of the tree
+     * @param <S>    the data type of the given tree
+     * @throws IllegalStateException if the tree is not loaded
+     */
+    public <S> QuantizedPRTree(PRTree<S> tree,
+                               Function<? super S, ? extends T> mapper) {
+        Node<S> root = tree.getRoot();
+        if (root == null)
+            throw new IllegalStateException("Tree is not loaded");
+        MBRConverter<S> converter = tree.getConverter();
+        if (converter.getDimensions() < 2)
+            throw new IllegalArgumentException("Need at least 2 dimensions");
+        branchFactor = tree.getBranchFactor();
+        height = tree.getHeight();
+
+        BreadthFirstNodes<S> nodes = new BreadthFirstNodes<>(root);
+        int numNodes = nodes.getNumberOfNodes();
+        int numEntries = nodes.getNumberOfEntries();
+        firstLeafNode = nodes.getFirstLeafNode();
+
+        if (numEntries > 0) {
+            MBR mbr = root.getMBR(converter);
+            minX = mbr.getMin(0);
+            minY = mbr.getMin(1);
+            maxX = mbr.getMax(0);
+            maxY = mbr.getMax(1);
+        } else {
+            minX = minY = maxX = maxY = 0;
+        }
+        scaleX = maxX > minX ? MAX_CELL / (maxX - minX) : 0;
+        scaleY = maxY > minY ? MAX_CELL / (maxY - minY) : 0;
+
+        nodeBounds = new int[4 * numNodes];
+        firstChild = new int[numNodes];
+        childCount = new int[numNodes];
+        nodeEntries = new int[numNodes];
+        entries = new Object[numEntries];
+        entryBounds = new int[4 * numEntries];
+
+        int nextNode = 1;
+        int nextEntry = 0;
+        for (int i = 0; i < numNodes; i++) {
+            Node<S> n = nodes.get(i);
+            int s = n.size();
+            childCount[i] = s;
+            if (s > 0) {
+                MBR mbr = n.getMBR(converter);
+                setBounds(nodeBounds, 4 * i, mbr.getMin(0), mbr.getMin(1),
+                        mbr.getMax(0), mbr.getMax(1));
+            }
+            if (i < firstLeafNode) {
+                firstChild[i] = nextNode;
+                nextNode += s;
+            } else {
+                LeafNode<S> ln = (LeafNode<S>) n;
+                firstChild[i] = nextEntry;
+                for (int j = 0; j < s; j++) {
+                    S t = ln.get(j);
+                    entries[nextEntry] = mapper.apply(t);
+                    setBounds(entryBounds, 4 * nextEntry,
+                            converter.getMin(0, t), converter.getMin(1, t),
+                            converter.getMax(0, t), converter.getMax(1, t));
+                    nextEntry++;
+                }
+                nodeEntries[i] = s;
+            }
+        }
+        // children always come after their parent
+        for (int i = firstLeafNode - 1; i >= 0; i--) {
+            int sum = 0;
+            for (int c = firstChild[i], end = c + childCount[i]; c < end; c++)
+                sum += nodeEntries[c];
+            nodeEntries[i] = sum;
+        }
+    }
+
+    private void setBounds(int[] bounds, int p, double xmin, double ymin,
+                           double xmax, double ymax) {
+        bounds[p] = lower(xmin, minX, scaleX);
+        bounds[p + 1] = lower(ymin, minY, scaleY);
+        bounds[p + 2] = upper(xmax, minX, scaleX);
+        bounds[p + 3] = upper(ymax, minY, scaleY);
+    }
+
+    /**
+     * Quantize a minimum, rounding down. The mapping is monotonic so a
+     * rounded down minimum is never above a rounded up maximum that was
+     * above it before quantization.
+     */
+    private static int lower(double v, double min, double scale) {
+        double d = Math.floor((v - min) * scale);
+        if (d <= 0)
+            return 0;
+        return d >= MAX_CELL ? MAX_CELL : (int) d;
+    }
+
+    /**
+     * Quantize a maximum, rounding up.
+     */
+    private static int upper(double v, double min, double scale) {
+        double d = Math.ceil((v - min) * scale);
+        if (d <= 0)
+            return 0;
+        return d >= MAX_CELL ? MAX_CELL : (int) d;
+    }
+
+    /**
+     * Get a 2 dimensional minimum bounding rectangle of the data
+     * stored in this tree, this is the exact extent of the data.
+     *
+     * @return the MBR of the whole tree, null if the tree is empty
+     */
+    public MBR2D getMBR2D() {
+        if (isEmpty())
+            return null;
+        return new SimpleMBR2D(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Get the number of data leafs in this tree.
+     *
+     * @return the total number of leafs in this tree
+     */
+    public int getNumberOfLeaves() {
+        return entries.length;
+    }
+
+    /**
+     * Check if this tree is empty
+     *
+     * @return true if the number of leafs is 0, false otherwise
+     */
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    /**
+     * Get the height of this tree.
+     *
+     * @return the total height of this tree
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and stores
+     * the found node in the given list.
+     *
+     * @param xmin        the minimum value of the x coordinate when searching
+     * @param ymin        the minimum value of the y coordinate when searching
+     * @param xmax        the maximum value of the x coordinate when searching
+     * @param ymax        the maximum value of the y coordinate when searching
+     * @param resultNodes the list that will be filled with the result
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     final List<T> resultNodes) {
+        find(xmin, ymin, xmax, ymax, new QueryContext(), new NodeVisitor<T>() {
+            public void visit(T t) {
+                resultNodes.add(t);
+            }
+        });
+    }
+
+    /**
+     * Finds all objects that intersect the given rectangle and hands
+     * them to the given visitor. If the context has stats they are
+     * updated. The visitor may end the query early by calling
+     * {@link QueryContext#stop}.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     QueryContext ctx, NodeVisitor<T> visitor) {
+        find(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, ctx, visitor);
+    }
+
+    /**
+     * Finds objects that intersect the given rectangle and hands them to
+     * the given visitor, the traversal ends as soon as limit objects have
+     * been found or the visitor calls {@link QueryContext#stop}.
+     *
+     * @param xmin    the minimum value of the x coordinate when searching
+     * @param ymin    the minimum value of the y coordinate when searching
+     * @param xmax    the maximum value of the x coordinate when searching
+     * @param ymax    the maximum value of the y coordinate when searching
+     * @param limit   the maximum number of objects to find
+     * @param ctx     the reusable working storage for the query
+     * @param visitor the visitor that gets the found objects
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    @SuppressWarnings("unchecked")
+    public void find(double xmin, double ymin, double xmax, double ymax,
+                     int limit, QueryContext ctx, NodeVisitor<T> visitor) {
+        PRTree.validateRect(xmin, ymin, xmax, ymax);
+        ctx.start(limit);
+        if (ctx.isStopped() || !intersectsExtent(xmin, ymin, xmax, ymax))
+            return;
+        int qxmin = lower(xmin, minX, scaleX);
+        int qymin = lower(ymin, minY, scaleY);
+        int qxmax = upper(xmax, minX, scaleX);
+        int qymax = upper(ymax, minY, scaleY);
+        QueryStats stats = ctx.getStats();
+        int[] stack = ctx.getInts(height * branchFactor + 1);
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0 && !ctx.isStopped()) {
+            int n = stack[--top];
+            int first = firstChild[n];
+            int end = first + childCount[n];
+            if (n < firstLeafNode) {
+                for (int c = first; c < end; c++) {
+                    if (intersects(nodeBounds, 4 * c,
+                            qxmin, qymin, qxmax, qymax))
+                        stack[top++] = c;
+                }
+            } else {
+                int hits = 0;
+                int e = first;
+                while (e < end) {
+                    if (intersects(entryBounds, 4 * e++,
+                            qxmin, qymin, qxmax, qymax)) {
+                        hits++;
+                        visitor.visit((T) entries[e - 1]);
+                        if (ctx.hit())
+                            break;
+                    }
+                }
+                if (stats != null) {
+                    stats.leavesVisited++;
+                    stats.entriesTested += e - first;
+                    stats.hits += hits;
+                }
+            }
+            if (stats != null)
+                stats.nodesVisited++;
+        }
+    }
+
+    /**
+     * Count the objects that intersect the given rectangle, the same
+     * objects that find would report.
+     * <p>
+     * <p>Every node knows the number of objects below it, so a node that
+     * is fully inside the query is counted without visiting it. The bounds
+     * of an entry are always inside the bounds of its node after
+     * quantization too, so this gives the same count as find.
+     *
+     * @param xmin the minimum value of the x coordinate when searching
+     * @param ymin the minimum value of the y coordinate when searching
+     * @param xmax the maximum value of the x coordinate when searching
+     * @param ymax the maximum value of the y coordinate when searching
+     * @return the number of objects that intersect the rectangle
+     * @throws IllegalArgumentException if xmin &gt; xmax or ymin &gt; ymax
+     */
+    public int count(double xmin, double ymin, double xmax, double ymax) {
+        PRTree.validateRect(xmin, ymin, xmax, ymax);
+        if (!intersectsExtent(xmin, ymin, xmax, ymax))
+            return 0;
+        int qxmin = lower(xmin, minX, scaleX);
+        int qymin = lower(ymin, minY, scaleY);
+        int qxmax = upper(xmax, minX, scaleX);
+        int qymax = upper(ymax, minY, scaleY);
+        int[] stack = new int[height * branchFactor + 1];
+        int top = 0;
+        int ret = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int n = stack[--top];
+            if (!intersects(nodeBounds, 4 * n, qxmin, qymin, qxmax, qymax))
+                continue;
+            if (contains(qxmin, qymin, qxmax, qymax, nodeBounds, 4 * n)) {
+                ret += nodeEntries[n];
+                continue;
+            }
+            int first = firstChild[n];
+            int end = first + childCount[n];
+            if (n < firstLeafNode) {
+                for (int c = first; c < end; c++)
+                    stack[top++] = c;
+            } else {
+                for (int e = first; e < end; e++) {
+                    if (intersects(entryBounds, 4 * e,
+                            qxmin, qymin, qxmax, qymax))
+                        ret++;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private boolean intersectsExtent(double xmin, double ymin,
+                                     double xmax, double ymax) {
+        return !isEmpty() &&
+                !(xmax < minX || xmin > maxX || ymax < minY || ymin > maxY);
+    }
+
+    private static boolean intersects(int[] bounds, int p, int xmin, int ymin,
+                                      int xmax, int ymax) {
+        return !(bounds[p + 2] < xmin || bounds[p] > xmax ||
+                bounds[p + 3] < ymin || bounds[p + 1] > ymax);
+    }
+
+    private static boolean contains(int xmin, int ymin, int xmax, int ymax,
+                                    int[] bounds, int p) {
+        return bounds[p] >= xmin && bounds[p + 1] >= ymin &&
+                bounds[p + 2] <= xmax && bounds[p + 3] <= ymax;
+    }
+}
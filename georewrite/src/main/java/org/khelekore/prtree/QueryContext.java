@@ -0,0 +1,138 @@
+package org.khelekore.prtree;
+
+/**
+ * Reusable working storage for the visitor based find methods.
+ * <p>
+ * <p>Keeping one QueryContext per thread and passing it to every query
+ * means that a query does not allocate anything. A context may only be
+ * used by one query at a time, so do not share it between threads and
+ * do not reuse it for a query started from inside a NodeVisitor.
+ */
+public class QueryContext {
+    private Object[] nodes = new Object[64];
+    private int top;
+    private int[] ints = new int[64];
+    private double[] query = new double[4];
+    private QueryStats stats;
+    private int remaining = Integer.MAX_VALUE;
+    private boolean stopped;
+    private Object wrapper;
+
+    /**
+     * Set the stats that the queries run with this context add to.
+     *
+     * @param stats the stats to update, null to not collect any stats
+     */
+    public void setStats(QueryStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Get the stats that the queries run with this context add to.
+     *
+     * @return the stats, null if no stats are collected
+     */
+    public QueryStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Stop the query that runs with this context. This is meant to be
+     * called from a NodeVisitor, no more objects are visited after the
+     * current one.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Check if the last query was stopped, either by {@link #stop} or
+     * because it reached its limit.
+     *
+     * @return true if the last query ended early
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Clear the node stack and start a query that stops after the given
+     * number of hits.
+     */
+    void start(int limit) {
+        clear();
+        remaining = limit;
+        stopped = limit <= 0;
+    }
+
+    /**
+     * Count a hit of the running query.
+     *
+     * @return true if the query should stop
+     */
+    boolean hit() {
+        if (--remaining <= 0)
+            stopped = true;
+        return stopped;
+    }
+
+    void clear() {
+        for (int i = 0; i < top; i++)
+            nodes[i] = null;
+        top = 0;
+    }
+
+    void push(Object node) {
+        if (top == nodes.length) {
+            Object[] n = new Object[nodes.length * 2];
+            System.arraycopy(nodes, 0, n, 0, top);
+            nodes = n;
+        }
+        nodes[top++] = node;
+    }
+
+    Object pop() {
+        Object n = nodes[--top];
+        nodes[top] = null;
+        return n;
+    }
+
+    boolean isEmpty() {
+        return top == 0;
+    }
+
+    /**
+     * Get the visitor that a tree keeps in this context to wrap the
+     * visitor of the caller, null if none has been set.
+     */
+    Object getWrapper() {
+        return wrapper;
+    }
+
+    /**
+     * Keep a visitor that wraps the visitor of the caller, so that the
+     * tree can reuse it for the next query with this context.
+     */
+    void setWrapper(Object wrapper) {
+        this.wrapper = wrapper;
+    }
+
+    /**
+     * Get an int array with at least the given size, the content is undefined.
+     */
+    int[] getInts(int size) {
+        if (ints.length < size)
+            ints = new int[size];
+        return ints;
+    }
+
+    /**
+     * Get a double array with at least the given size, the content is
+     * undefined.
+     */
+    double[] getQuery(int size) {
+        if (query.length < size)
+            query = new double[size];
+        return query;
+    }
+}
@@ -0,0 +1,85 @@
+package org.khelekore.prtree;
+
+/**
+ * Counts the work done by queries.
+ * <p>
+ * <p>Set a QueryStats on a {@link QueryContext}, or give it to
+ * {@link PRTree#find(MBR, NodeFilter, QueryStats)}, and every query run
+ * with it adds to the counters. Comparing the entries tested with the
+ * hits shows how well the tree fits the queries, a high ratio of false
+ * positives means that the leaf nodes are much larger than the query
+ * windows.
+ * <p>
+ * <p>A QueryStats is not thread safe.
+ */
+public class QueryStats {
+    int nodesVisited;
+    int leavesVisited;
+    long entriesTested;
+    long hits;
+
+    /**
+     * Get the number of nodes, internal and leaf nodes, that were expanded.
+     *
+     * @return the number of visited nodes
+     */
+    public int getNodesVisited() {
+        return nodesVisited;
+    }
+
+    /**
+     * Get the number of leaf nodes that were expanded.
+     *
+     * @return the number of visited leaf nodes
+     */
+    public int getLeavesVisited() {
+        return leavesVisited;
+    }
+
+    /**
+     * Get the number of data entries that were tested against the query.
+     *
+     * @return the number of tested entries
+     */
+    public long getEntriesTested() {
+        return entriesTested;
+    }
+
+    /**
+     * Get the number of data entries that were found.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the part of the tested entries that were not found.
+     *
+     * @return the false positive ratio, 0 if no entries were tested
+     */
+    public double getFalsePositiveRatio() {
+        if (entriesTested == 0)
+            return 0;
+        return (double) (entriesTested - hits) / entriesTested;
+    }
+
+    /**
+     * Set all counters to 0.
+     */
+    public void reset() {
+        nodesVisited = 0;
+        leavesVisited = 0;
+        entriesTested = 0;
+        hits = 0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{nodesVisited: " + nodesVisited +
+                ", leavesVisited: " + leavesVisited +
+                ", entriesTested: " + entriesTested +
+                ", hits: " + hits + "}";
+    }
+}
@@ -0,0 +1,21 @@
+package org.khelekore.prtree;
+
+import java.util.List;
+
+/**
+ * A callback that receives the objects found by a parallel find in
+ * chunks.
+ *
+ * @param <T> the node type
+ */
+public interface ResultSink<T> {
+    /**
+     * Called once for every chunk of found objects. May be called from
+     * several threads at the same time, so implementations must be
+     * thread safe. The list is not used by the tree after the call, so
+     * it may be kept.
+     *
+     * @param found a chunk of found objects
+     */
+    void add(List<T> found);
+}
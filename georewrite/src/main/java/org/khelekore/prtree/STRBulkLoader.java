@@ -0,0 +1,63 @@
+package org.khelekore.prtree;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The Sort-Tile-Recursive loader. The elements are sorted by the center
+ * of the first axis and cut into slabs that each fill the same number of
+ * nodes, then each slab is handled the same way on the next axis. The
+ * slabs of the last axis are packed in order.
+ */
+class STRBulkLoader implements BulkLoader {
+
+    public <T, N> void buildNodes(Collection<? extends T> elements,
+                                  MBRConverter<T> converter, int branchFactor,
+                                  NodeFactory<N> nf, List<N> nodes) {
+        Object[] es = elements.toArray();
+        tile(es, 0, es.length, 0, converter, branchFactor, nf, nodes);
+    }
+
+    private <T, N> void tile(Object[] es, int from, int to, int axis,
+                             MBRConverter<T> converter, int branchFactor,
+                             NodeFactory<N> nf, List<N> nodes) {
+        int n = to - from;
+        if (n == 0)
+            return;
+        Arrays.sort(es, from, to, new CenterComparator<>(converter, axis));
+        int dims = converter.getDimensions();
+        if (axis == dims - 1) {
+            for (int i = from; i < to; i += branchFactor)
+                nodes.add(nf.create(Arrays.copyOfRange(es, i,
+                        Math.min(i + branchFactor, to))));
+            return;
+        }
+        int numNodes = (n + branchFactor - 1) / branchFactor;
+        int slabs = (int) Math.ceil(Math.pow(numNodes, 1.0 / (dims - axis)));
+        int slabSize = branchFactor * ((numNodes + slabs - 1) / slabs);
+        for (int i = from; i < to; i += slabSize)
+            tile(es, i, Math.min(i + slabSize, to), axis + 1,
+                    converter, branchFactor, nf, nodes);
+    }
+
+    private static class CenterComparator<T> implements Comparator<Object> {
+        private final MBRConverter<T> converter;
+        private final int axis;
+
+        public CenterComparator(MBRConverter<T> converter, int axis) {
+            this.converter = converter;
+            this.axis = axis;
+        }
+
+        @SuppressWarnings("unchecked")
+        public int compare(Object o1, Object o2) {
+            T t1 = (T) o1;
+            T t2 = (T) o2;
+            double c1 = converter.getMin(axis, t1) + converter.getMax(axis, t1);
+            double c2 = converter.getMin(axis, t2) + converter.getMax(axis, t2);
+            return Double.compare(c1, c2);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Joins two trees by walking them together, a pair of nodes is only
+ * expanded if the bounds of the two nodes intersect.
+ *
+ * @param <T> the data type of the first tree
+ * @param <S> the data type of the second tree
+ */
+class SpatialJoin<T, S> {
+    private final MBRConverter<T> tc;
+    private final MBRConverter<S> sc;
+    private final int dimensions;
+    private final JoinVisitor<T, S> visitor;
+
+    public SpatialJoin(MBRConverter<T> tc, MBRConverter<S> sc,
+                       JoinVisitor<T, S> visitor) {
+        this.tc = tc;
+        this.sc = sc;
+        this.dimensions = Math.min(tc.getDimensions(), sc.getDimensions());
+        this.visitor = visitor;
+    }
+
+    /**
+     * Join the two trees, in parallel over the pairs of root children if
+     * a pool is given.
+     */
+    public void join(Node<T> a, Node<S> b, ForkJoinPool pool) {
+        if (!intersects(a.getMBR(tc), b.getMBR(sc)))
+            return;
+        if (pool == null) {
+            joinNodes(a, b);
+            return;
+        }
+        final List<RecursiveAction> tasks = new ArrayList<>();
+        for (final Node<T> ca : children(a)) {
+            for (final Node<S> cb : children(b)) {
+                if (intersects(ca.getMBR(tc), cb.getMBR(sc))) {
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            joinNodes(ca, cb);
+                        }
+                    });
+                }
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <U> List<Node<U>> children(Node<U> n) {
+        List<Node<U>> ret = new ArrayList<>();
+        if (n instanceof InternalNode) {
+            InternalNode<U> in = (InternalNode<U>) n;
+            for (int i = 0, s = in.size(); i < s; i++)
+                ret.add(in.get(i));
+        } else {
+            ret.add(n);
+        }
+        return ret;
+    }
+
+    private void joinNodes(Node<T> a, Node<S> b) {
+        boolean aLeaf = a instanceof LeafNode;
+        boolean bLeaf = b instanceof LeafNode;
+        if (aLeaf && bLeaf) {
+            joinLeafs((LeafNode<T>) a, (LeafNode<S>) b);
+        } else if (bLeaf) {
+            InternalNode<T> in = (InternalNode<T>) a;
+            MBR mb = b.getMBR(sc);
+            for (int i = 0, s = in.size(); i < s; i++) {
+                Node<T> c = in.get(i);
+                if (intersects(c.getMBR(tc), mb))
+                    joinNodes(c, b);
+            }
+        } else if (aLeaf) {
+            InternalNode<S> in = (InternalNode<S>) b;
+            MBR ma = a.getMBR(tc);
+            for (int i = 0, s = in.size(); i < s; i++) {
+                Node<S> c = in.get(i);
+                if (intersects(ma, c.getMBR(sc)))
+                    joinNodes(a, c);
+            }
+        } else {
+            InternalNode<T> ia = (InternalNode<T>) a;
+            InternalNode<S> ib = (InternalNode<S>) b;
+            MBR mb = b.getMBR(sc);
+            for (int i = 0, s = ia.size(); i < s; i++) {
+                Node<T> ca = ia.get(i);
+                MBR mca = ca.getMBR(tc);
+                // children of a outside of b can not match any child of b
+                if (!intersects(mca, mb))
+                    continue;
+                for (int j = 0, t = ib.size(); j < t; j++) {
+                    Node<S> cb = ib.get(j);
+                    if (intersects(mca, cb.getMBR(sc)))
+                        joinNodes(ca, cb);
+                }
+            }
+        }
+    }
+
+    private void joinLeafs(LeafNode<T> a, LeafNode<S> b) {
+        MBR mb = b.getMBR(sc);
+        for (int i = 0, s = a.size(); i < s; i++) {
+            T t = a.get(i);
+            if (!intersects(t, mb))
+                continue;
+            for (int j = 0, u = b.size(); j < u; j++) {
+                S o = b.get(j);
+                if (intersects(t, o))
+                    visitor.visit(t, o);
+            }
+        }
+    }
+
+    private boolean intersects(MBR a, MBR b) {
+        for (int i = 0; i < dimensions; i++) {
+            if (a.getMax(i) < b.getMin(i) || a.getMin(i) > b.getMax(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean intersects(T t, MBR b) {
+        for (int i = 0; i < dimensions; i++) {
+            if (tc.getMax(i, t) < b.getMin(i) || tc.getMin(i, t) > b.getMax(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean intersects(T t, S s) {
+        for (int i = 0; i < dimensions; i++) {
+            if (tc.getMax(i, t) < sc.getMin(i, s) ||
+                    tc.getMin(i, t) > sc.getMax(i, s))
+                return false;
+        }
+        return true;
+    }
+}
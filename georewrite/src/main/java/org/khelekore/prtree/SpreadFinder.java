@@ -0,0 +1,150 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds a limited number of objects that intersect a 2 dimensional query,
+ * taken round robin from different subtrees so that they are spread over
+ * the query instead of coming from one corner of it.
+ *
+ * @param <T> the data type stored in the tree
+ */
+class SpreadFinder<T> {
+    private final MBRConverter<T> converter;
+    private final double xmin;
+    private final double ymin;
+    private final double xmax;
+    private final double ymax;
+
+    public SpreadFinder(MBRConverter<T> converter, double xmin, double ymin,
+                        double xmax, double ymax) {
+        this.converter = converter;
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.xmax = xmax;
+        this.ymax = ymax;
+    }
+
+    public void find(Node<T> root, int limit, QueryContext ctx,
+                     NodeVisitor<T> visitor) {
+        if (!intersects(root.getMBR(converter)))
+            return;
+        QueryStats stats = ctx.getStats();
+        List<Node<T>> level = new ArrayList<>();
+        level.add(root);
+        // all leaf nodes are on the same level, so either all nodes of a
+        // level are internal nodes or all are leaf nodes
+        while (level.size() < limit && level.get(0) instanceof InternalNode) {
+            List<Node<T>> next = expand(level);
+            if (stats != null)
+                stats.nodesVisited += level.size();
+            level = next;
+            if (level.isEmpty())
+                return;
+        }
+        List<Cursor> cursors = new ArrayList<>(level.size());
+        for (Node<T> n : level)
+            cursors.add(new Cursor(n));
+        while (!cursors.isEmpty()) {
+            // take one object from each subtree in turn, dropping the ones
+            // that have no more objects
+            int keep = 0;
+            for (int i = 0, s = cursors.size(); i < s; i++) {
+                Cursor c = cursors.get(i);
+                T t = c.next(stats);
+                if (t == null)
+                    continue;
+                cursors.set(keep++, c);
+                visitor.visit(t);
+                if (stats != null)
+                    stats.hits++;
+                if (ctx.hit())
+                    return;
+            }
+            cursors.subList(keep, cursors.size()).clear();
+        }
+    }
+
+    /**
+     * Get the children that intersect the query of all the given nodes,
+     * the first child of each node, then the second child of each node
+     * and so on. This way a prefix of the next level is spread over all
+     * the nodes of this level.
+     */
+    private List<Node<T>> expand(List<Node<T>> level) {
+        List<Node<T>> next = new ArrayList<>();
+        for (int j = 0, added = 1; added > 0; j++) {
+            added = 0;
+            for (Node<T> n : level) {
+                InternalNode<T> in = (InternalNode<T>) n;
+                if (j >= in.size())
+                    continue;
+                added++;
+                Node<T> c = in.get(j);
+                if (intersects(c.getMBR(converter)))
+                    next.add(c);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Walks one subtree depth first and returns the objects that
+     * intersect the query one at a time.
+     */
+    private class Cursor {
+        private final List<Node<T>> stack = new ArrayList<>();
+        private LeafNode<T> leaf;
+        private int pos;
+
+        public Cursor(Node<T> n) {
+            stack.add(n);
+        }
+
+        public T next(QueryStats stats) {
+            while (true) {
+                if (leaf != null) {
+                    while (pos < leaf.size()) {
+                        T t = leaf.get(pos++);
+                        if (stats != null)
+                            stats.entriesTested++;
+                        if (intersects(t))
+                            return t;
+                    }
+                    leaf = null;
+                }
+                if (stack.isEmpty())
+                    return null;
+                Node<T> n = stack.remove(stack.size() - 1);
+                if (stats != null)
+                    stats.nodesVisited++;
+                if (n instanceof LeafNode) {
+                    leaf = (LeafNode<T>) n;
+                    pos = 0;
+                    if (stats != null)
+                        stats.leavesVisited++;
+                } else {
+                    InternalNode<T> in = (InternalNode<T>) n;
+                    for (int i = in.size() - 1; i >= 0; i--) {
+                        Node<T> c = in.get(i);
+                        if (intersects(c.getMBR(converter)))
+                            stack.add(c);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean intersects(MBR m) {
+        return !(m.getMax(0) < xmin || m.getMin(0) > xmax ||
+                m.getMax(1) < ymin || m.getMin(1) > ymax);
+    }
+
+    private boolean intersects(T t) {
+        return !(converter.getMax(0, t) < xmin ||
+                converter.getMin(0, t) > xmax ||
+                converter.getMax(1, t) < ymin ||
+                converter.getMin(1, t) > ymax);
+    }
+}
@@ -0,0 +1,233 @@
+package org.wowtools.georewrite;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.khelekore.prtree.DeltaPRTree;
+import org.khelekore.prtree.MBRConverter;
+import org.khelekore.prtree.NodeVisitor;
+import org.khelekore.prtree.QueryContext;
+import org.wowtools.georewrite.PrtreeIndex.GeometryBuilder;
+import org.wowtools.georewrite.PrtreeIndex.ResultVister;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * 支持增删feature的空间索引，基于DeltaPRTree
+ * <p>
+ * PrtreeIndex是一次性构建的，数据变化时只能整体重建(见VersionedPrtreeIndex)。此类把新增的feature放在一个小的增量数组中，
+ * 删除的feature记为墓碑，增删累计达到mergeThreshold时在executor中重新构建底层的树，查询不会被阻塞。
+ * 适合数据少量、频繁变化的表，GeoSqlQueryer中持有此类即可在表数据变化时直接insert/remove
+ * <p>
+ * feature按equals比较，remove时传入的feature的geometry须与insert时的外接矩形相同
+ *
+ * @param <T> 索引的对象类型
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class DeltaPrtreeIndex<T> {
+
+    /**
+     * 树中存放的对象，保存feature及其外接矩形，使底层的树无需反复获取geometry
+     *
+     * @param <T> 索引的对象类型
+     */
+    private static final class Leaf<T> {
+        private final T feature;
+        private final double xmin;
+        private final double ymin;
+        private final double xmax;
+        private final double ymax;
+
+        private Leaf(T feature, Envelope env) {
+            this.feature = feature;
+            this.xmin = env.getMinX();
+            this.ymin = env.getMinY();
+            this.xmax = env.getMaxX();
+            this.ymax = env.getMaxY();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Leaf && feature.equals(((Leaf<?>) obj).feature);
+        }
+
+        @Override
+        public int hashCode() {
+            return feature.hashCode();
+        }
+    }
+
+    private static final MBRConverter<Leaf<?>> converter = new MBRConverter<Leaf<?>>() {
+        public int getDimensions() {
+            return 2;
+        }
+
+        public double getMin(int axis, Leaf<?> t) {
+            return axis == 0 ? t.xmin : t.ymin;
+        }
+
+        public double getMax(int axis, Leaf<?> t) {
+            return axis == 0 ? t.xmax : t.ymax;
+        }
+    };
+
+    /**
+     * 每个线程复用的查询上下文，与PrtreeIndex的一样不引用任何索引，vister只在一次查询期间设置
+     *
+     * @param <T> 本次查询的索引的对象类型
+     */
+    private static class LeafQuery<T> implements NodeVisitor<Leaf<?>> {
+        private final QueryContext ctx = new QueryContext();
+        private ResultVister<T> vister;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void visit(Leaf<?> leaf) {
+            vister.vist((T) leaf.feature);
+        }
+    }
+
+    private static final ThreadLocal<LeafQuery<?>> leafQueries = ThreadLocal.withInitial(LeafQuery::new);
+
+    private final GeometryBuilder<T> geometryBuilder;
+
+    private final DeltaPRTree<Leaf<?>> tree;
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类
+     * @param branchFactor    树的分支数，如30
+     * @param mergeThreshold  增删累计多少次后重新构建底层的树，越大写入越慢(每次写入复制增量数组)，查询也越慢
+     * @param executor        重新构建底层树的线程池
+     */
+    public DeltaPrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, int branchFactor,
+                            int mergeThreshold, Executor executor) {
+        this.geometryBuilder = geometryBuilder;
+        List<Leaf<?>> leaves = new ArrayList<>(features.size());
+        for (T feature : features) {
+            Leaf<T> leaf = toLeaf(feature);
+            if (null != leaf) {
+                leaves.add(leaf);
+            }
+        }
+        tree = new DeltaPRTree<>(converter, branchFactor, leaves, mergeThreshold, executor);
+    }
+
+    /**
+     * 由feature的geometry的外接矩形构造树中的对象
+     *
+     * @return geometry为null或empty时返回null
+     */
+    private Leaf<T> toLeaf(T feature) {
+        Geometry geo = geometryBuilder.feature2Geometry(feature);
+        if (null == geo) {
+            return null;
+        }
+        Envelope env = geo.getEnvelopeInternal();
+        if (env.isNull()) {
+            return null;
+        }
+        return new Leaf<>(feature, env);
+    }
+
+    /**
+     * 新增一个feature，之后开始的查询即可查到
+     *
+     * @param feature feature
+     * @return geometry为null或empty，没有被索引时返回false
+     */
+    public boolean insert(T feature) {
+        Leaf<T> leaf = toLeaf(feature);
+        if (null == leaf) {
+            return false;
+        }
+        tree.insert(leaf);
+        return true;
+    }
+
+    /**
+     * 删除一个与feature相等(equals)的对象，索引中有多个相等的对象时只删除一个
+     *
+     * @param feature feature，其geometry的外接矩形须与insert时相同
+     * @return 找到并删除时返回true
+     */
+    public boolean remove(T feature) {
+        Leaf<T> leaf = toLeaf(feature);
+        return null != leaf && tree.remove(leaf);
+    }
+
+    /**
+     * @return 尚未合并到底层树中的增删次数
+     */
+    public int getNumberOfChanges() {
+        return tree.getNumberOfChanges();
+    }
+
+    /**
+     * 范围查询
+     *
+     * @param xmin   xmin
+     * @param ymin   ymin
+     * @param xmax   xmax
+     * @param ymax   ymax
+     * @param vister vister
+     */
+    public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, ResultVister<T> vister) {
+        queryEnvIntersect(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, vister);
+    }
+
+    /**
+     * 限制结果数的范围查询，找到limit个对象后即停止
+     *
+     * @param xmin   xmin
+     * @param ymin   ymin
+     * @param xmax   xmax
+     * @param ymax   ymax
+     * @param limit  最多返回的对象数
+     * @param vister vister
+     */
+    public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, int limit,
+                                  ResultVister<T> vister) {
+        LeafQuery<T> q = getLeafQuery();
+        q.vister = vister;
+        try {
+            tree.find(xmin, ymin, xmax, ymax, limit, q.ctx, q);
+        } finally {
+            q.vister = null;
+        }
+    }
+
+    /**
+     * 精确查询，先按查询范围的外接矩形查出候选对象，再判断候选对象的geometry是否与查询范围相交，
+     * 见PrtreeIndex.queryGeometryIntersect
+     *
+     * @param queryGeometry 查询范围
+     * @param vister        vister
+     */
+    public void queryGeometryIntersect(PreparedGeometry queryGeometry, ResultVister<T> vister) {
+        Envelope env = queryGeometry.getGeometry().getEnvelopeInternal();
+        if (env.isNull()) {
+            return;
+        }
+        queryEnvIntersect(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY(), (feature) -> {
+            Geometry geo = geometryBuilder.feature2Geometry(feature);
+            if (null != geo && queryGeometry.intersects(geo)) {
+                vister.vist(feature);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> LeafQuery<T> getLeafQuery() {
+        LeafQuery<T> q = (LeafQuery<T>) leafQueries.get();
+        if (null != q.vister) {// vister中又发起了查询，线程内的上下文正在使用，只能新建一个
+            q = new LeafQuery<>();
+        }
+        return q;
+    }
+}
@@ -12,7 +12,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 
@@ -70,6 +72,7 @@ public abstract class GeoSqlQueryer {
 
     private final HashMap<String, ColumnDefinition> columnInfo;
     private final String tableName;
+    private final PreparedGeometryCache preparedGeometryCache = new PreparedGeometryCache(256);
 
     /**
      * 若需要使用buildSimpleResultSetByColumns方法来构造一个SimpleResultSet对象作为返回，
@@ -215,6 +218,32 @@ public abstract class GeoSqlQueryer {
         }
     }
 
+    /**
+     * 将输入的范围wkt转为PreparedGeometry，用于PrtreeIndex.queryGeometryIntersect精确查询。
+     * 最近使用过的查询范围会被缓存，同一个范围再次查询时无需重新解析和构建
+     *
+     * @param pg 将输入的范围wkt
+     * @return 范围PreparedGeometry
+     */
+    protected PreparedGeometry pg2PreparedGeometry(String pg) {
+        return preparedGeometryCache.get(pg);
+    }
+
+    /**
+     * 根据查询范围和瓦片的像素大小，计算期望的要素间距，用于LodPrtreeIndex选择抽稀级别，
+     * 使每个瓦片返回的feature数量不随缩放级别变化
+     *
+     * @param pg               查询范围
+     * @param tilePixels       瓦片的像素宽度，如256
+     * @param pixelsPerFeature 每个feature至少占的像素数，越大返回的feature越少
+     * @return 要素间距，与查询范围的坐标单位相同
+     * @see LodPrtreeIndex#levelFor(double)
+     */
+    protected double pg2Spacing(PreparedGeometry pg, int tilePixels, double pixelsPerFeature) {
+        Envelope env = pg.getGeometry().getEnvelopeInternal();
+        return Math.max(env.getWidth(), env.getHeight()) / tilePixels * pixelsPerFeature;
+    }
+
     public String getTableName() {
         return tableName;
     }
@@ -0,0 +1,246 @@
+package org.wowtools.georewrite;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.khelekore.prtree.QueryStats;
+
+/**
+ * 一个索引上范围查询的统计(哪些查询计入见PrtreeIndex.getMetrics)，包括遍历的节点数、测试的叶子数、命中数的总计和分布，以及误检率(测试了但没有命中的比例)的分布。
+ * 误检率长期偏高说明叶子节点相对于实际的查询范围过大，可以据此调整branchFactor
+ * <p>
+ * 所有计数都基于LongAdder，可以被多个查询线程同时更新
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class IndexMetrics {
+
+    /**
+     * 直方图，每个桶统计不大于其上界且大于上一个桶上界的值的个数，最后一个桶统计超出所有上界的值
+     */
+    public static class Histogram {
+        private final long[] upperBounds;
+        private final LongAdder[] buckets;
+
+        /**
+         * @param upperBounds 各个桶的上界，需从小到大排列
+         */
+        public Histogram(long[] upperBounds) {
+            this.upperBounds = upperBounds.clone();
+            buckets = new LongAdder[upperBounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * 以2的幂为上界的直方图，上界为0,1,2,4...2^maxExponent
+         *
+         * @param maxExponent 最大的上界的指数
+         * @return 直方图
+         */
+        public static Histogram powerOfTwo(int maxExponent) {
+            long[] bounds = new long[maxExponent + 2];
+            for (int i = 1; i < bounds.length; i++) {
+                bounds[i] = 1L << (i - 1);
+            }
+            return new Histogram(bounds);
+        }
+
+        public void record(long value) {
+            int lo = 0;
+            int hi = upperBounds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (upperBounds[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            buckets[lo].increment();
+        }
+
+        /**
+         * @return 桶的个数，比上界个数多一个
+         */
+        public int getBucketCount() {
+            return buckets.length;
+        }
+
+        /**
+         * @param bucket 桶序号
+         * @return 桶的上界，最后一个桶为Long.MAX_VALUE
+         */
+        public long getUpperBound(int bucket) {
+            return bucket < upperBounds.length ? upperBounds[bucket] : Long.MAX_VALUE;
+        }
+
+        /**
+         * @param bucket 桶序号
+         * @return 落在桶中的值的个数
+         */
+        public long getCount(int bucket) {
+            return buckets[bucket].sum();
+        }
+
+        /**
+         * 估算分位数
+         *
+         * @param quantile 分位，0到1之间
+         * @return 分位数所在桶的上界
+         */
+        public long getQuantile(double quantile) {
+            long total = 0;
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return getUpperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        public void reset() {
+            for (LongAdder b : buckets) {
+                b.reset();
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < buckets.length; i++) {
+                long c = buckets[i].sum();
+                if (c == 0) {
+                    continue;
+                }
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(i < upperBounds.length ? "<=" + upperBounds[i] : ">" + upperBounds[upperBounds.length - 1]);
+                sb.append(": ").append(c);
+            }
+            return sb.append('}').toString();
+        }
+    }
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder leavesVisited = new LongAdder();
+    private final LongAdder entriesTested = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    private final Histogram nodesVisitedHistogram = Histogram.powerOfTwo(24);
+    private final Histogram leavesVisitedHistogram = Histogram.powerOfTwo(24);
+    private final Histogram hitsHistogram = Histogram.powerOfTwo(30);
+    /**
+     * 误检率的分布，以百分比计，每10%一个桶
+     */
+    private final Histogram falsePositiveHistogram = new Histogram(new long[]{0, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100});
+
+    /**
+     * 记录一次查询
+     *
+     * @param stats 查询的统计
+     */
+    public void record(QueryStats stats) {
+        queries.increment();
+        nodesVisited.add(stats.getNodesVisited());
+        leavesVisited.add(stats.getLeavesVisited());
+        entriesTested.add(stats.getEntriesTested());
+        hits.add(stats.getHits());
+        nodesVisitedHistogram.record(stats.getNodesVisited());
+        leavesVisitedHistogram.record(stats.getLeavesVisited());
+        hitsHistogram.record(stats.getHits());
+        if (stats.getEntriesTested() > 0) {
+            falsePositiveHistogram.record(Math.round(stats.getFalsePositiveRatio() * 100));
+        }
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    public long getLeavesVisited() {
+        return leavesVisited.sum();
+    }
+
+    public long getEntriesTested() {
+        return entriesTested.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return 所有查询中测试了但没有命中的对象的比例
+     */
+    public double getFalsePositiveRatio() {
+        long tested = entriesTested.sum();
+        if (tested == 0) {
+            return 0;
+        }
+        return (double) (tested - hits.sum()) / tested;
+    }
+
+    public Histogram getNodesVisitedHistogram() {
+        return nodesVisitedHistogram;
+    }
+
+    public Histogram getLeavesVisitedHistogram() {
+        return leavesVisitedHistogram;
+    }
+
+    public Histogram getHitsHistogram() {
+        return hitsHistogram;
+    }
+
+    /**
+     * @return 每次查询误检率(百分比)的分布
+     */
+    public Histogram getFalsePositiveHistogram() {
+        return falsePositiveHistogram;
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        queries.reset();
+        nodesVisited.reset();
+        leavesVisited.reset();
+        entriesTested.reset();
+        hits.reset();
+        nodesVisitedHistogram.reset();
+        leavesVisitedHistogram.reset();
+        hitsHistogram.reset();
+        falsePositiveHistogram.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexMetrics{queries: " + getQueries() +
+                ", nodesVisited: " + getNodesVisited() +
+                ", leavesVisited: " + getLeavesVisited() +
+                ", entriesTested: " + getEntriesTested() +
+                ", hits: " + getHits() +
+                ", falsePositiveRatio: " + getFalsePositiveRatio() +
+                ", nodesVisitedHistogram: " + nodesVisitedHistogram +
+                ", leavesVisitedHistogram: " + leavesVisitedHistogram +
+                ", hitsHistogram: " + hitsHistogram +
+                ", falsePositiveHistogram: " + falsePositiveHistogram + "}";
+    }
+}
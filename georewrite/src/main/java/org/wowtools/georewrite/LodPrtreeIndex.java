@@ -0,0 +1,204 @@
+package org.wowtools.georewrite;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import org.khelekore.prtree.BulkLoaders;
+import org.wowtools.georewrite.PrtreeIndex.GeometryBuilder;
+import org.wowtools.georewrite.PrtreeIndex.ResultVister;
+import org.wowtools.georewrite.PrtreeIndex.Storage;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * 多级抽稀(level of detail)的空间索引，用于缩小地图时避免把大量feature全部查出
+ * <p>
+ * 构建时除全量索引外，还预先生成一组逐级稀疏的代表子集：第k级把数据范围按边长minCellSize*2^k的网格切分，
+ * 每个格子只保留一个feature(外接矩形中心点落在格子内的feature中最重要的一个，未指定importance时为最先出现的一个)，
+ * 每一级都是前一级的子集。查询时按调用方期望的要素间距选择级别，使同样大小的瓦片无论缩放到哪一级，
+ * 返回的feature数量都大致相同
+ *
+ * @param <T> 索引的对象类型
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class LodPrtreeIndex<T> implements Closeable {
+
+    /**
+     * 格子坐标的上限，保证两个格子坐标能拼成一个long
+     */
+    private static final double MAX_CELLS = 1 << 30;
+
+    private final PrtreeIndex<T> full;
+
+    /**
+     * 第k级的抽稀索引，格子边长为minCellSize*2^k
+     */
+    private final List<PrtreeIndex<T>> levels = new ArrayList<>();
+
+    private final double minCellSize;
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类
+     * @param minCellSize     最细一级抽稀的格子边长，查询要求的间距小于它时查全量索引
+     */
+    public LodPrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, double minCellSize) {
+        this(features, geometryBuilder, minCellSize, null, Storage.HEAP);
+    }
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类
+     * @param minCellSize     最细一级抽稀的格子边长，查询要求的间距小于它时查全量索引。
+     *                        若数据范围超过2^30个格子，会被调大
+     * @param importance      feature的重要程度，排在前面的更重要，优先被保留，为null时按features的顺序
+     * @param storage         各级索引的存储方式，见Storage
+     */
+    public LodPrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, double minCellSize,
+                          Comparator<? super T> importance, Storage storage) {
+        if (!(minCellSize > 0)) {
+            throw new IllegalArgumentException("minCellSize必须大于0:" + minCellSize);
+        }
+        full = new PrtreeIndex<>(features, geometryBuilder, BulkLoaders.priority(), storage);
+        Envelope extent = full.getEnvelope();
+        double size = Math.max(extent.getWidth(), extent.getHeight());
+        if (size / minCellSize > MAX_CELLS) {
+            minCellSize = size / MAX_CELLS;
+        }
+        this.minCellSize = minCellSize;
+        if (extent.isNull() || size <= minCellSize) {// 不需要抽稀
+            return;
+        }
+
+        Collection<T> ordered = features;
+        if (null != importance) {
+            List<T> list = new ArrayList<>(features);
+            list.sort(importance);
+            ordered = list;
+        }
+        // 第0级，按重要程度顺序，每个格子取第一个
+        List<T> sample = new ArrayList<>();
+        int[] cx = new int[16];
+        int[] cy = new int[16];
+        HashSet<Long> taken = new HashSet<>();
+        for (T feature : ordered) {
+            Geometry geo = geometryBuilder.feature2Geometry(feature);
+            if (null == geo) {
+                continue;
+            }
+            Envelope env = geo.getEnvelopeInternal();
+            if (env.isNull()) {
+                continue;
+            }
+            int x = (int) (((env.getMinX() + env.getMaxX()) / 2 - extent.getMinX()) / minCellSize);
+            int y = (int) (((env.getMinY() + env.getMaxY()) / 2 - extent.getMinY()) / minCellSize);
+            if (taken.add(((long) x << 32) | y)) {
+                if (sample.size() == cx.length) {
+                    cx = Arrays.copyOf(cx, cx.length * 2);
+                    cy = Arrays.copyOf(cy, cy.length * 2);
+                }
+                cx[sample.size()] = x;
+                cy[sample.size()] = y;
+                sample.add(feature);
+            }
+        }
+        // 逐级合并2*2个格子，子集的顺序不变，所以每个格子保留的仍是其中最重要的一个
+        double cellSize = minCellSize;
+        while (true) {
+            levels.add(new PrtreeIndex<>(sample, geometryBuilder, BulkLoaders.priority(), storage));
+            if (sample.size() <= 1 || cellSize >= size) {
+                break;
+            }
+            cellSize *= 2;
+            taken.clear();
+            List<T> next = new ArrayList<>();
+            for (int i = 0; i < sample.size(); i++) {
+                int x = cx[i] >> 1;
+                int y = cy[i] >> 1;
+                if (taken.add(((long) x << 32) | y)) {
+                    cx[next.size()] = x;
+                    cy[next.size()] = y;
+                    next.add(sample.get(i));
+                }
+            }
+            sample = next;
+        }
+    }
+
+    /**
+     * 按期望的要素间距选择级别
+     *
+     * @param spacing 期望返回的feature之间的最小间距，如查询范围宽度/瓦片像素宽度*每个feature占的像素数
+     * @return 格子边长与spacing最接近(按倍数)的一级，spacing比最细一级的格子小得多时返回-1，表示查全量索引
+     */
+    public int levelFor(double spacing) {
+        double max = spacing * Math.sqrt(2);
+        int level = -1;
+        for (double cellSize = minCellSize; level + 1 < levels.size() && cellSize <= max; cellSize *= 2) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return 抽稀的级数，不含全量索引
+     */
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * 获取某一级的索引
+     *
+     * @param level 级别，-1为全量索引
+     * @return 索引
+     */
+    public PrtreeIndex<T> getLevel(int level) {
+        return level < 0 ? full : levels.get(level);
+    }
+
+    /**
+     * 按期望的要素间距抽稀的范围查询
+     *
+     * @param xmin    xmin
+     * @param ymin    ymin
+     * @param xmax    xmax
+     * @param ymax    ymax
+     * @param spacing 期望返回的feature之间的最小间距，见levelFor
+     * @param vister  vister
+     */
+    public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, double spacing,
+                                  ResultVister<T> vister) {
+        getLevel(levelFor(spacing)).queryEnvIntersect(xmin, ymin, xmax, ymax, vister);
+    }
+
+    /**
+     * 按期望的要素间距抽稀的精确相交查询，见PrtreeIndex.queryGeometryIntersect
+     *
+     * @param queryGeometry 查询范围
+     * @param spacing       期望返回的feature之间的最小间距，见levelFor
+     * @param vister        vister
+     */
+    public void queryGeometryIntersect(PreparedGeometry queryGeometry, double spacing, ResultVister<T> vister) {
+        getLevel(levelFor(spacing)).queryGeometryIntersect(queryGeometry, vister);
+    }
+
+    /**
+     * 释放各级索引的堆外内存，close后不能再查询
+     */
+    @Override
+    public void close() {
+        full.close();
+        for (PrtreeIndex<T> level : levels) {
+            level.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.wowtools.georewrite;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ * 查询范围wkt到PreparedGeometry的缓存，同一个查询范围(如同一个瓦片)被反复请求时，无需重复解析和构建PreparedGeometry
+ * <p>
+ * 按最近最少使用淘汰，可以被多个查询线程同时使用。PreparedGeometry本身是线程安全的，可以被多个线程同时用来判断相交
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class PreparedGeometryCache {
+
+    private final PreparedGeometryFactory factory = new PreparedGeometryFactory();
+
+    private final LinkedHashMap<String, PreparedGeometry> cache;
+
+    /**
+     * @param capacity 最多缓存多少个查询范围
+     */
+    public PreparedGeometryCache(int capacity) {
+        cache = new LinkedHashMap<String, PreparedGeometry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedGeometry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 获取wkt对应的PreparedGeometry，缓存中没有时解析wkt并构建
+     *
+     * @param wkt 查询范围wkt
+     * @return PreparedGeometry
+     */
+    public PreparedGeometry get(String wkt) {
+        PreparedGeometry prepared;
+        synchronized (cache) {
+            prepared = cache.get(wkt);
+        }
+        if (null != prepared) {
+            return prepared;
+        }
+        // 解析和构建放在锁外，多个线程同时未命中同一个wkt时最多重复构建几次
+        Geometry geo;
+        try {
+            geo = new WKTReader().read(wkt);
+        } catch (ParseException e) {
+            throw new RuntimeException("解析输入范围错误:" + wkt, e);
+        }
+        prepared = factory.create(geo);
+        synchronized (cache) {
+            cache.put(wkt, prepared);
+        }
+        return prepared;
+    }
+}
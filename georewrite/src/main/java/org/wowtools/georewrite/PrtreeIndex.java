@@ -1,23 +1,73 @@
 package org.wowtools.georewrite;
 
 import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.khelekore.prtree.AcceptAll;
+import org.khelekore.prtree.BatchVisitor;
+import org.khelekore.prtree.BufferPRTree;
+import org.khelekore.prtree.BulkLoader;
+import org.khelekore.prtree.BulkLoaders;
+import org.khelekore.prtree.MBR2D;
 import org.khelekore.prtree.MBRConverter;
+import org.khelekore.prtree.NodeVisitor;
 import org.khelekore.prtree.PRTree;
+import org.khelekore.prtree.PackedPRTree;
+import org.khelekore.prtree.QuantizedPRTree;
+import org.khelekore.prtree.QueryContext;
+import org.khelekore.prtree.QueryStats;
+import org.khelekore.prtree.SimplePointND;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 
 /**
- * 基于prtree构建的空间索引，由于prtree是一次性构建的，不支持动态修改，所以此类中也不包含任何用于修改的方法
+ * 基于prtree构建的空间索引，由于prtree是一次性构建的，不支持动态修改，所以此类中也不包含任何用于修改的方法。
+ * 需要增删feature时使用DeltaPrtreeIndex，需要整体重建时使用VersionedPrtreeIndex
  *
  * @param <T> 索引的对象类型，必须具备获取geometry的能力
  * @author liuyu
  * @date 2016年12月30日
  */
-public class PrtreeIndex<T> {
+public class PrtreeIndex<T> implements Closeable {
+
+    /**
+     * 索引的存储方式
+     *
+     * @author liuyu
+     * @date 2026年10月17日
+     */
+    public static enum Storage {
+        /**
+         * 普通的对象树，支持全部功能
+         */
+        HEAP,
+        /**
+         * 树压平为数组(PackedPRTree)，不再有节点对象，外接矩形复制到数组中后丢弃叶子节点对象，
+         * 内存约为HEAP的1/2，查询结果与HEAP完全相同，不支持join
+         */
+        PACKED,
+        /**
+         * 压缩存储，外接矩形以相对于全图范围的int存储，内存约为HEAP的1/3，
+         * 查询结果可能多出与查询范围相距不到全图范围1/2^31的对象，不支持join
+         */
+        QUANTIZED,
+        /**
+         * 树存放在堆外内存中，不参与GC，适合上亿对象的索引，不支持join，不再使用时需调用close释放内存
+         */
+        OFF_HEAP
+    }
 
     /**
      * 查询结果访问器
@@ -31,6 +81,35 @@ public class PrtreeIndex<T> {
         public void vist(T feature);
     }
 
+    /**
+     * 批量查询结果访问器
+     *
+     * @param <T> 索引的对象类型
+     * @author liuyu
+     * @date 2026年10月17日
+     */
+    @FunctionalInterface
+    public static interface BatchResultVister<T> {
+        /**
+         * @param queryIndex 命中的查询范围在批次中的序号
+         * @param feature    查询到的对象
+         */
+        public void vist(int queryIndex, T feature);
+    }
+
+    /**
+     * 空间连接结果访问器
+     *
+     * @param <T> 本索引的对象类型
+     * @param <S> 另一个索引的对象类型
+     * @author liuyu
+     * @date 2026年10月17日
+     */
+    @FunctionalInterface
+    public static interface JoinVister<T, S> {
+        public void vist(T feature, S otherFeature);
+    }
+
     /**
      * 根据传入的对象，获取其对应的geometry
      *
@@ -85,51 +164,183 @@ public class PrtreeIndex<T> {
         }
     }
 
+    /**
+     * 每个线程复用的查询上下文，把叶子节点转交给ResultVister，使查询过程不产生临时对象。
+     * 所有索引共用，不引用任何索引，vister只在一次查询期间设置，所以线程不会因为它而持有已替换的索引
+     *
+     * @param <T> 本次查询的索引的对象类型
+     **/
+    private static class IndexQuery<T> implements NodeVisitor<PrtreeIndex<T>.PrtreeLeafNode>,
+            BatchVisitor<PrtreeIndex<T>.PrtreeLeafNode> {
+        private final QueryContext ctx = new QueryContext();
+        private final QueryStats stats = new QueryStats();
+
+        private IndexQuery() {
+            ctx.setStats(stats);
+        }
+        private ResultVister<T> vister;
+        private BatchResultVister<T> batchVister;
+        private int queryIndex;
+        /**
+         * 压平、压缩或堆外模式下树中直接存放feature，用这个访问器转交
+         */
+        private final NodeVisitor<T> featureVisitor = new NodeVisitor<T>() {
+            @Override
+            public void visit(T feature) {
+                if (null != vister) {
+                    vister.vist(feature);
+                } else {
+                    batchVister.vist(queryIndex, feature);
+                }
+            }
+        };
+
+        @Override
+        public void visit(PrtreeIndex<T>.PrtreeLeafNode treeNode) {
+            vister.vist(treeNode.node);
+        }
+
+        @Override
+        public void visit(int query, PrtreeIndex<T>.PrtreeLeafNode treeNode) {
+            batchVister.vist(query, treeNode.node);
+        }
+
+        private boolean isBusy() {
+            return null != vister || null != batchVister;
+        }
+    }
+
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
     private final PRTree<PrtreeLeafNode> tree;
 
+    /**
+     * 压平模式下的树，与tree、quantizedTree、offHeapTree只有一个不为null
+     */
+    private final PackedPRTree<T> packedTree;
+
+    /**
+     * 压缩模式下的树
+     */
+    private final QuantizedPRTree<T> quantizedTree;
+
+    /**
+     * 堆外模式下的树
+     */
+    private final BufferPRTree<T> offHeapTree;
+
+    /**
+     * 精确查询时用来获取候选对象的geometry
+     */
+    private final GeometryBuilder<T> geometryBuilder;
+
+    /**
+     * 所有feature的外接矩形，没有feature时为null envelope
+     */
+    private final Envelope envelope;
+
+    private static final ThreadLocal<IndexQuery<?>> indexQueries = ThreadLocal.withInitial(IndexQuery::new);
+
+    private final IndexMetrics metrics = new IndexMetrics();
+
     /**
      * @param features        需要索引的对象Collection
      * @param geometryBuilder 描述如何从feature中获取geometry的实现类
      */
     public PrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder) {
-        ArrayList<PrtreeLeafNode> leafNodes = new ArrayList<>(features.size());
-        for (T feature : features) {
-            // 得到几何对象外接矩形，进而构造一个PrtreeLeafNode节点
-            Geometry geo = geometryBuilder.feature2Geometry(feature);
-            if (null == geo) {
-                continue;
-            }
-            Coordinate[] extent = geo.getEnvelope().getCoordinates();
-            double xmin = extent[0].x;
-            double ymin = extent[0].y;
-            double w;
-            double h;
-            if (extent.length == 1) {// 点对象的外接矩形仅包含一个点
-                w = 0;
-                h = 0;
-            } else if (extent.length == 5) {// 非点对象的外接矩形包含5个点,第三个点为(xmax,ymax)
-                w = extent[2].x - xmin;
-                h = extent[2].y - ymin;
-            } else if (extent.length == 2) {// x或y相同的线
-                w = extent[1].x - xmin;
-                h = extent[1].y - ymin;
-            } else if (extent.length == 0) {// empty
-                continue;
-            } else {
-                throw new RuntimeException("未处理的extent:" + extent.length);
-            }
-            PrtreeLeafNode leafNode = new PrtreeLeafNode(feature, xmin, ymin, w, h);
-            if (null != leafNode) {
-                leafNodes.add(leafNode);
+        this(features, geometryBuilder, BulkLoaders.priority());
+    }
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类
+     * @param loader          构建树的算法，见BulkLoaders，如分布均匀的点数据用hilbert或str构建更快
+     */
+    public PrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, BulkLoader loader) {
+        this(features, geometryBuilder, loader, Storage.HEAP);
+    }
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类
+     * @param loader          构建树的算法，见BulkLoaders
+     * @param storage         索引的存储方式，见Storage
+     */
+    public PrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, BulkLoader loader,
+                       Storage storage) {
+        this(features, geometryBuilder, loader, storage, null);
+    }
+
+    /**
+     * 并行构建索引，feature转geometry(如解析wkb)和树的构建都在pool的线程中执行
+     *
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类，会被多个线程同时调用
+     * @param storage         索引的存储方式，见Storage
+     * @param pool            执行构建的线程池
+     */
+    public PrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, Storage storage,
+                       ForkJoinPool pool) {
+        this(features, geometryBuilder, BulkLoaders.priority(pool), storage, pool);
+    }
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类，pool不为null时会被多个线程同时调用
+     * @param loader          构建树的算法，见BulkLoaders，如需并行构建树，传入使用同一pool的loader
+     * @param storage         索引的存储方式，见Storage
+     * @param pool            并行获取feature外接矩形的线程池，为null时在当前线程中顺序执行
+     */
+    public PrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, BulkLoader loader,
+                       Storage storage, ForkJoinPool pool) {
+        this.geometryBuilder = geometryBuilder;
+        List<PrtreeLeafNode> leafNodes;
+        if (null == pool) {
+            leafNodes = new ArrayList<>(features.size());
+            for (T feature : features) {
+                PrtreeLeafNode leafNode = toLeafNode(feature);
+                if (null != leafNode) {
+                    leafNodes.add(leafNode);
+                }
             }
+        } else {
+            leafNodes = pool.submit(() -> features.parallelStream()
+                    .map(this::toLeafNode)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList())).join();
         }
 
         int branchFactor = (int) (Math.cbrt(Math.sqrt(leafNodes.size())));// 设置树深度为6左右
         if (branchFactor < 4) {
             branchFactor = 4;
         }
-        tree = new PRTree<PrtreeLeafNode>(new NodeConverter(), branchFactor);
-        tree.load(leafNodes);
+        PRTree<PrtreeLeafNode> prtree = new PRTree<PrtreeLeafNode>(new NodeConverter(), branchFactor);
+        prtree.load(leafNodes, loader);
+        MBR2D mbr = prtree.getMBR2D();
+        envelope = null == mbr ? new Envelope() : new Envelope(mbr.getMinX(), mbr.getMaxX(), mbr.getMinY(), mbr.getMaxY());
+        // 压平、压缩或堆外存储时，PrtreeLeafNode和原树都不再需要
+        tree = storage == Storage.HEAP ? prtree : null;
+        packedTree = storage == Storage.PACKED ? new PackedPRTree<T>(prtree, leaf -> leaf.node) : null;
+        quantizedTree = storage == Storage.QUANTIZED ? new QuantizedPRTree<T>(prtree, leaf -> leaf.node) : null;
+        offHeapTree = storage == Storage.OFF_HEAP ? BufferPRTree.offHeap(prtree, leaf -> leaf.node) : null;
+    }
+
+    /**
+     * 由几何对象的外接矩形构造一个PrtreeLeafNode节点，直接读取getEnvelopeInternal，不再构造外接矩形geometry
+     *
+     * @param feature feature
+     * @return 叶子节点，geometry为null或empty时返回null
+     */
+    private PrtreeLeafNode toLeafNode(T feature) {
+        Geometry geo = geometryBuilder.feature2Geometry(feature);
+        if (null == geo) {
+            return null;
+        }
+        Envelope env = geo.getEnvelopeInternal();
+        if (env.isNull()) {// empty
+            return null;
+        }
+        return new PrtreeLeafNode(feature, env.getMinX(), env.getMinY(), env.getWidth(), env.getHeight());
     }
 
     /**
@@ -142,9 +353,313 @@ public class PrtreeIndex<T> {
      * @param vister vister
      */
     public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, ResultVister<T> vister) {
-        Iterable<PrtreeLeafNode> iterable = tree.find(xmin, ymin, xmax, ymax);
-        iterable.forEach((treeNode) -> {
-            vister.vist(treeNode.node);
-        });
+        queryEnvIntersect(xmin, ymin, xmax, ymax, Integer.MAX_VALUE, false, vister);
+    }
+
+    /**
+     * 限制结果数的范围查询，找到limit个对象后即停止遍历，用于geoserver的maxFeatures等只需要部分结果的场景
+     *
+     * @param xmin   xmin
+     * @param ymin   ymin
+     * @param xmax   xmax
+     * @param ymax   ymax
+     * @param limit  最多返回的对象数
+     * @param spread 为true时按层轮流从各个子树中取对象，使结果分散在整个查询范围内而不是集中在一角，
+     *               代价比false时高，适合limit较小的情况；压平、压缩或堆外存储的索引不支持，总是按false处理
+     * @param vister vister
+     */
+    public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, int limit, boolean spread,
+                                  ResultVister<T> vister) {
+        IndexQuery<T> q = getIndexQuery();
+        q.vister = vister;
+        q.stats.reset();
+        try {
+            if (null == tree) {
+                findFeatures(xmin, ymin, xmax, ymax, limit, q.ctx, q.featureVisitor);
+            } else if (spread) {
+                tree.findSpread(xmin, ymin, xmax, ymax, limit, q.ctx, q);
+            } else {
+                tree.find(xmin, ymin, xmax, ymax, limit, q.ctx, q);
+            }
+        } finally {
+            q.vister = null;
+        }
+        metrics.record(q.stats);
+    }
+
+    /**
+     * 大范围查询，预估命中数不小于parallelThreshold时在pool中并行遍历树，否则与普通的范围查询相同，
+     * 适合缩放级别很小、一次命中大量对象的请求。并行查询不计入getMetrics的统计
+     *
+     * @param xmin              xmin
+     * @param ymin              ymin
+     * @param xmax              xmax
+     * @param ymax              ymax
+     * @param vister            vister，各线程的结果会按块串行交给vister，vister本身无需线程安全
+     * @param pool              执行并行查询的线程池
+     * @param parallelThreshold 预估命中数达到多少时并行查询，如100000
+     */
+    public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, ResultVister<T> vister,
+                                  ForkJoinPool pool, int parallelThreshold) {
+        if (null == tree) {// 压平、压缩或堆外的树不支持并行遍历
+            queryEnvIntersect(xmin, ymin, xmax, ymax, vister);
+            return;
+        }
+        tree.find(xmin, ymin, xmax, ymax, found -> {
+            synchronized (vister) {
+                for (PrtreeLeafNode leafNode : found) {
+                    vister.vist(leafNode.node);
+                }
+            }
+        }, pool, parallelThreshold);
+    }
+
+    /**
+     * 精确查询，先按查询范围的外接矩形查出候选对象，再用PreparedGeometry逐个判断候选对象的geometry是否与查询范围相交，
+     * 以去掉斜线、大多边形这类外接矩形与查询范围相交但本身并不相交的对象
+     * <p>
+     * 候选对象的geometry由构造索引时传入的geometryBuilder获取，geometryBuilder可以直接返回保存好的geometry，也可以每次从wkb等解码
+     *
+     * @param queryGeometry 查询范围，可用PreparedGeometryCache缓存反复使用的查询范围
+     * @param vister        vister
+     */
+    public void queryGeometryIntersect(PreparedGeometry queryGeometry, ResultVister<T> vister) {
+        queryGeometryIntersect(queryGeometry, vister, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 精确查询，候选对象数不小于parallelThreshold时在pool中并行判断候选对象是否与查询范围相交。
+     * pool不为null时先用countEnvIntersect统计候选对象数，未达到parallelThreshold时与不传pool相同
+     *
+     * @param queryGeometry     查询范围，可用PreparedGeometryCache缓存反复使用的查询范围
+     * @param vister            vister，只会在调用线程中被调用，无需线程安全
+     * @param pool              并行判断的线程池，为null时总是在调用线程中判断
+     * @param parallelThreshold 候选对象数达到多少时并行判断，如10000
+     * @see #queryGeometryIntersect(PreparedGeometry, ResultVister)
+     */
+    public void queryGeometryIntersect(PreparedGeometry queryGeometry, ResultVister<T> vister, ForkJoinPool pool,
+                                       int parallelThreshold) {
+        Envelope env = queryGeometry.getGeometry().getEnvelopeInternal();
+        if (env.isNull()) {
+            return;
+        }
+        double xmin = env.getMinX(), ymin = env.getMinY(), xmax = env.getMaxX(), ymax = env.getMaxY();
+        if (null == pool || countEnvIntersect(xmin, ymin, xmax, ymax) < parallelThreshold) {
+            // 遍历时直接判断，不产生候选对象列表
+            queryEnvIntersect(xmin, ymin, xmax, ymax, (candidate) -> {
+                if (geometryIntersects(queryGeometry, candidate)) {
+                    vister.vist(candidate);
+                }
+            });
+            return;
+        }
+        // 只有并行判断时才需要先收集候选对象
+        ArrayList<T> candidates = new ArrayList<>();
+        queryEnvIntersect(xmin, ymin, xmax, ymax, candidates::add);
+        int n = candidates.size();
+        // 在pool中执行，使并行流使用pool的线程
+        boolean[] hits = new boolean[n];
+        pool.submit(() -> IntStream.range(0, n).parallel()
+                .forEach(i -> hits[i] = geometryIntersects(queryGeometry, candidates.get(i)))).join();
+        for (int i = 0; i < n; i++) {
+            if (hits[i]) {
+                vister.vist(candidates.get(i));
+            }
+        }
+    }
+
+    private boolean geometryIntersects(PreparedGeometry queryGeometry, T feature) {
+        Geometry geo = geometryBuilder.feature2Geometry(feature);
+        return null != geo && queryGeometry.intersects(geo);
+    }
+
+    /**
+     * 距离查询，查询与点(x,y)的距离不超过distance的对象，距离按geometryBuilder获取的实际geometry计算。
+     * 遍历时跳过与点的最小距离超过distance的节点，不产生中间结果列表
+     *
+     * @param x        x
+     * @param y        y
+     * @param distance 最大距离
+     * @param vister   vister
+     */
+    public void queryWithinDistance(double x, double y, double distance, ResultVister<T> vister) {
+        Point center = geometryFactory.createPoint(new Coordinate(x, y));
+        if (null == tree) {// 压平、压缩或堆外的树按外接矩形查询后再判断距离
+            double maxDist2 = distance * distance;
+            queryEnvIntersect(x - distance, y - distance, x + distance, y + distance, (feature) -> {
+                if (squaredDistance(feature, center) <= maxDist2) {
+                    vister.vist(feature);
+                }
+            });
+            return;
+        }
+        IndexQuery<T> q = getIndexQuery();
+        q.vister = vister;
+        q.stats.reset();
+        try {
+            tree.findWithinDistance((leafNode, p) -> squaredDistance(leafNode.node, center),
+                    new AcceptAll<PrtreeLeafNode>(), new SimplePointND(x, y), distance, q.ctx, q);
+        } finally {
+            q.vister = null;
+        }
+        metrics.record(q.stats);
+    }
+
+    /**
+     * feature到点的距离的平方，与prtree中的MinDist一致，没有geometry的对象距离为无穷大
+     */
+    private double squaredDistance(T feature, Point point) {
+        Geometry geo = geometryBuilder.feature2Geometry(feature);
+        if (null == geo) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double d = geo.distance(point);
+        return d * d;
+    }
+
+    /**
+     * 批量范围查询，多个查询范围共用一次树的遍历，适合一次请求多个相邻范围(如一个metatile中的各个瓦片)的场景。
+     * 共用的遍历无法拆分到各个范围，所以批量查询不计入getMetrics的统计
+     *
+     * @param envs   查询范围，每个范围依次为xmin,ymin,xmax,ymax
+     * @param vister 结果访问器，同一个对象与多个范围相交时会对每个范围各访问一次
+     */
+    public void queryEnvIntersect(double[] envs, BatchResultVister<T> vister) {
+        IndexQuery<T> q = getIndexQuery();
+        q.batchVister = vister;
+        try {
+            if (null != offHeapTree) {// 堆外的树逐个范围查询，但整批只登记一次读者，中途close不会截断
+                offHeapTree.find(envs, q.ctx, vister::vist);
+            } else if (null == tree) {// 压平或压缩的树不支持批量遍历，逐个范围查询
+                if (envs.length % 4 != 0) {
+                    throw new IllegalArgumentException("envs.length: " + envs.length + " is not a multiple of 4");
+                }
+                for (int i = 0, p = 0; p < envs.length; i++, p += 4) {
+                    q.queryIndex = i;
+                    findFeatures(envs[p], envs[p + 1], envs[p + 2], envs[p + 3], Integer.MAX_VALUE, q.ctx,
+                            q.featureVisitor);
+                }
+            } else {
+                tree.find(envs, q.ctx, q);
+            }
+        } finally {
+            q.batchVister = null;
+        }
+    }
+
+    /**
+     * 范围计数，只统计与范围相交的对象个数，完全落在范围内的子树直接累加其对象数而不再遍历。
+     * 计数不逐个测试对象，没有可比的遍历统计，所以不计入getMetrics的统计
+     *
+     * @param xmin xmin
+     * @param ymin ymin
+     * @param xmax xmax
+     * @param ymax ymax
+     * @return 与范围相交的对象个数
+     */
+    public int countEnvIntersect(double xmin, double ymin, double xmax, double ymax) {
+        if (null != packedTree) {
+            return packedTree.count(xmin, ymin, xmax, ymax);
+        }
+        if (null != quantizedTree) {
+            return quantizedTree.count(xmin, ymin, xmax, ymax);
+        }
+        if (null != offHeapTree) {
+            return offHeapTree.count(xmin, ymin, xmax, ymax);
+        }
+        return tree.count(xmin, ymin, xmax, ymax);
+    }
+
+    /**
+     * 空间连接，同时遍历两棵树，找出外接矩形相交的所有对象对，用于代替对本索引中每个对象逐个查询另一个索引
+     *
+     * @param other  另一个索引
+     * @param vister 结果访问器，得到的是外接矩形相交的候选对，如需精确相交需自行判断
+     * @param <S>    另一个索引的对象类型
+     */
+    public <S> void join(PrtreeIndex<S> other, JoinVister<T, S> vister) {
+        checkJoinable(other);
+        tree.join(other.tree, (a, b) -> vister.vist(a.node, b.node));
+    }
+
+    /**
+     * 并行空间连接，在pool中按两棵树根节点下的子节点对并行遍历
+     *
+     * @param other  另一个索引
+     * @param vister 结果访问器，会被多个线程同时调用，需线程安全
+     * @param pool   执行连接的线程池
+     * @param <S>    另一个索引的对象类型
+     */
+    public <S> void join(PrtreeIndex<S> other, JoinVister<T, S> vister, ForkJoinPool pool) {
+        checkJoinable(other);
+        tree.join(other.tree, (a, b) -> vister.vist(a.node, b.node), pool);
+    }
+
+    private void checkJoinable(PrtreeIndex<?> other) {
+        if (null == tree || null == other.tree) {
+            throw new UnsupportedOperationException("压平、压缩或堆外存储的索引不支持join");
+        }
+    }
+
+    /**
+     * 在压平、压缩或堆外的树中查询，这几种树中直接存放feature
+     */
+    private void findFeatures(double xmin, double ymin, double xmax, double ymax, int limit, QueryContext ctx,
+                              NodeVisitor<T> visitor) {
+        if (null != packedTree) {
+            packedTree.find(xmin, ymin, xmax, ymax, limit, ctx, visitor);
+        } else if (null != quantizedTree) {
+            quantizedTree.find(xmin, ymin, xmax, ymax, limit, ctx, visitor);
+        } else {
+            offHeapTree.find(xmin, ymin, xmax, ymax, limit, ctx, visitor);
+        }
+    }
+
+    /**
+     * 释放堆外存储的内存，其它存储方式下无操作。正在进行的查询不受影响，内存在最后一个查询结束后释放，
+     * close后开始的查询抛出IllegalStateException
+     */
+    @Override
+    public void close() {
+        if (null != offHeapTree) {
+            offHeapTree.close();
+        }
+    }
+
+    /**
+     * 获取索引中所有feature的外接矩形
+     *
+     * @return 外接矩形的副本，索引为空时isNull()为true
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(envelope);
+    }
+
+    /**
+     * 判断索引中所有feature的外接矩形是否与范围相交，不复制外接矩形
+     */
+    boolean envelopeIntersects(double xmin, double ymin, double xmax, double ymax) {
+        return !(envelope.isNull() || envelope.getMaxX() < xmin || envelope.getMinX() > xmax
+                || envelope.getMaxY() < ymin || envelope.getMinY() > ymax);
+    }
+
+    /**
+     * 获取本索引上查询的统计，可用于观察实际查询模式下索引的效率。
+     * 统计单个范围的queryEnvIntersect(含limit，以及queryGeometryIntersect中的外接矩形查询)和queryWithinDistance，
+     * 批量查询、并行查询和countEnvIntersect不计入
+     *
+     * @return 统计信息
+     */
+    public IndexMetrics getMetrics() {
+        return metrics;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> IndexQuery<T> getIndexQuery() {
+        IndexQuery<T> q = (IndexQuery<T>) indexQueries.get();// 空闲的上下文不持有任何对象，可以用于任意类型
+        if (q.isBusy()) {// vister中又发起了查询，线程内的上下文正在使用，只能新建一个
+            q = new IndexQuery<>();
+        }
+        return q;
     }
 }
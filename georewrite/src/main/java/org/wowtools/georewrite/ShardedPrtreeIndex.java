@@ -0,0 +1,328 @@
+package org.wowtools.georewrite;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.khelekore.prtree.BulkLoaders;
+import org.wowtools.georewrite.PrtreeIndex.GeometryBuilder;
+import org.wowtools.georewrite.PrtreeIndex.ResultVister;
+import org.wowtools.georewrite.PrtreeIndex.Storage;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * 按网格分片的空间索引，把数据范围切分为cols*rows个格子，每个格子(分片)有自己的PrtreeIndex
+ * <p>
+ * feature按其外接矩形的中心点归入一个分片，范围外的中心点归入最近的边缘分片，所以每个feature只属于一个分片，查询结果不会重复。
+ * 查询只访问实际范围(分片内全部feature的外接矩形)与查询范围相交的分片，大范围查询可以把分片分给多个线程并行查询。
+ * 某个区域的数据变化时，用rebuildShard只重建对应的分片，其它分片和正在进行的查询不受影响
+ *
+ * @param <T> 索引的对象类型
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class ShardedPrtreeIndex<T> implements Closeable {
+
+    private final double xmin;
+    private final double ymin;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int cols;
+    private final int rows;
+
+    private final GeometryBuilder<T> geometryBuilder;
+    private final Storage storage;
+
+    private final VersionedPrtreeIndex<T>[] shards;
+
+    /**
+     * feature外接矩形超出其所在格子的最大距离，查询时把查询范围扩大这么多再确定要检查实际范围的分片。只增不减，写入时guarded by this
+     */
+    private volatile double marginX;
+    private volatile double marginY;
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类
+     * @param extent          切分网格的范围，一般为整个表的范围
+     * @param cols            网格的列数
+     * @param rows            网格的行数
+     */
+    public ShardedPrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, Envelope extent, int cols,
+                              int rows) {
+        this(features, geometryBuilder, extent, cols, rows, Storage.HEAP, null);
+    }
+
+    /**
+     * @param features        需要索引的对象Collection
+     * @param geometryBuilder 描述如何从feature中获取geometry的实现类，pool不为null时会被多个线程同时调用
+     * @param extent          切分网格的范围，一般为整个表的范围
+     * @param cols            网格的列数
+     * @param rows            网格的行数
+     * @param storage         各分片索引的存储方式，见Storage
+     * @param pool            并行构建各分片的线程池，为null时在当前线程中顺序构建
+     */
+    public ShardedPrtreeIndex(Collection<T> features, GeometryBuilder<T> geometryBuilder, Envelope extent, int cols,
+                              int rows, Storage storage, ForkJoinPool pool) {
+        if (cols < 1 || rows < 1) {
+            throw new IllegalArgumentException("网格行列数必须大于0:" + cols + "*" + rows);
+        }
+        if (extent.isNull()) {
+            throw new IllegalArgumentException("extent不能为空");
+        }
+        this.xmin = extent.getMinX();
+        this.ymin = extent.getMinY();
+        this.cellWidth = extent.getWidth() / cols;
+        this.cellHeight = extent.getHeight() / rows;
+        this.cols = cols;
+        this.rows = rows;
+        this.geometryBuilder = geometryBuilder;
+        this.storage = storage;
+
+        List<List<T>> shardFeatures = new ArrayList<>(cols * rows);
+        for (int i = 0; i < cols * rows; i++) {
+            shardFeatures.add(new ArrayList<>());
+        }
+        for (T feature : features) {
+            int shard = shardOf(feature);
+            if (shard >= 0) {
+                shardFeatures.get(shard).add(feature);
+            }
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        VersionedPrtreeIndex<T>[] shards = new VersionedPrtreeIndex[cols * rows];
+        this.shards = shards;
+        if (null == pool) {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new VersionedPrtreeIndex<>(buildShard(i, shardFeatures.get(i)));
+            }
+        } else {
+            pool.submit(() -> IntStream.range(0, shards.length).parallel().forEach(i -> {
+                shards[i] = new VersionedPrtreeIndex<>(buildShard(i, shardFeatures.get(i)));
+            })).join();
+        }
+    }
+
+    /**
+     * 构建一个分片的索引，并按其实际范围更新margin
+     */
+    private PrtreeIndex<T> buildShard(int shard, Collection<T> features) {
+        PrtreeIndex<T> index = new PrtreeIndex<>(features, geometryBuilder, BulkLoaders.priority(), storage);
+        Envelope env = index.getEnvelope();
+        if (!env.isNull()) {
+            double cellXmin = xmin + (shard % cols) * cellWidth;
+            double cellYmin = ymin + (shard / cols) * cellHeight;
+            double mx = Math.max(cellXmin - env.getMinX(), env.getMaxX() - (cellXmin + cellWidth));
+            double my = Math.max(cellYmin - env.getMinY(), env.getMaxY() - (cellYmin + cellHeight));
+            synchronized (this) {
+                if (mx > marginX) {
+                    marginX = mx;
+                }
+                if (my > marginY) {
+                    marginY = my;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 获取feature所属的分片
+     *
+     * @param feature feature
+     * @return 分片编号(行号*列数+列号)，geometry为null或empty时返回-1
+     */
+    public int shardOf(T feature) {
+        Geometry geo = geometryBuilder.feature2Geometry(feature);
+        if (null == geo) {
+            return -1;
+        }
+        Envelope env = geo.getEnvelopeInternal();
+        if (env.isNull()) {
+            return -1;
+        }
+        int col = col((env.getMinX() + env.getMaxX()) / 2);
+        int row = row((env.getMinY() + env.getMaxY()) / 2);
+        return row * cols + col;
+    }
+
+    private int col(double x) {
+        int c = (int) Math.floor((x - xmin) / cellWidth);
+        return c < 0 ? 0 : c >= cols ? cols - 1 : c;
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - ymin) / cellHeight);
+        return r < 0 ? 0 : r >= rows ? rows - 1 : r;
+    }
+
+    /**
+     * @return 分片数量
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 获取分片当前的版本号，每次rebuildShard后加1
+     *
+     * @param shard 分片编号
+     * @return 版本号
+     */
+    public long getShardVersion(int shard) {
+        return shards[shard].getVersion();
+    }
+
+    /**
+     * 用分片的最新数据重建它并替换旧的分片索引，之后开始的查询按新索引的实际范围判断是否访问该分片，正在进行的查询在旧索引上完成，
+     * 不属于该分片的feature(见shardOf)也会被索引，但会使查询时需要检查实际范围的分片增多
+     *
+     * @param shard    分片编号
+     * @param features 该分片的全部feature
+     * @return 分片的新版本号
+     */
+    public long rebuildShard(int shard, Collection<T> features) {
+        return shards[shard].rebuild(() -> buildShard(shard, features));
+    }
+
+    /**
+     * 范围查询
+     *
+     * @param xmin   xmin
+     * @param ymin   ymin
+     * @param xmax   xmax
+     * @param ymax   ymax
+     * @param vister vister
+     */
+    public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, ResultVister<T> vister) {
+        VersionedPrtreeIndex.Version<T>[] hit = acquireIntersecting(xmin, ymin, xmax, ymax);
+        try {
+            for (VersionedPrtreeIndex.Version<T> v : hit) {
+                v.getIndex().queryEnvIntersect(xmin, ymin, xmax, ymax, vister);
+            }
+        } finally {
+            release(hit);
+        }
+    }
+
+    /**
+     * 范围查询，实际范围与查询范围相交的分片数不少于parallelShards时，各分片在pool中并行查询，
+     * vister的调用是串行的(在同步块中调用)，但调用顺序不固定
+     *
+     * @param xmin           xmin
+     * @param ymin           ymin
+     * @param xmax           xmax
+     * @param ymax           ymax
+     * @param vister         vister
+     * @param pool           执行并行查询的线程池
+     * @param parallelShards 实际范围与查询范围相交的分片数达到此值时才并行查询
+     */
+    public void queryEnvIntersect(double xmin, double ymin, double xmax, double ymax, ResultVister<T> vister,
+                                  ForkJoinPool pool, int parallelShards) {
+        VersionedPrtreeIndex.Version<T>[] hit = acquireIntersecting(xmin, ymin, xmax, ymax);
+        try {
+            if (hit.length < parallelShards) {
+                for (VersionedPrtreeIndex.Version<T> v : hit) {
+                    v.getIndex().queryEnvIntersect(xmin, ymin, xmax, ymax, vister);
+                }
+                return;
+            }
+            ResultVister<T> syncVister = (feature) -> {
+                synchronized (vister) {
+                    vister.vist(feature);
+                }
+            };
+            pool.submit(() -> Arrays.stream(hit).parallel()
+                    .forEach(v -> v.getIndex().queryEnvIntersect(xmin, ymin, xmax, ymax, syncVister))).join();
+        } finally {
+            release(hit);
+        }
+    }
+
+    /**
+     * 精确的相交查询，见PrtreeIndex.queryGeometryIntersect
+     *
+     * @param queryGeometry 查询范围
+     * @param vister        vister
+     */
+    public void queryGeometryIntersect(PreparedGeometry queryGeometry, ResultVister<T> vister) {
+        Envelope env = queryGeometry.getGeometry().getEnvelopeInternal();
+        if (env.isNull()) {
+            return;
+        }
+        VersionedPrtreeIndex.Version<T>[] hit = acquireIntersecting(env.getMinX(), env.getMinY(), env.getMaxX(),
+                env.getMaxY());
+        try {
+            for (VersionedPrtreeIndex.Version<T> v : hit) {
+                v.getIndex().queryGeometryIntersect(queryGeometry, vister);
+            }
+        } finally {
+            release(hit);
+        }
+    }
+
+    /**
+     * 取得实际范围与查询范围相交的分片的当前版本，先按margin确定可能相交的格子，再逐个检查取得的版本的实际范围，
+     * 所以rebuildShard替换分片后，查询按的总是与之一同取得的索引的范围。返回的版本用完后须用release关闭
+     *
+     * @return 分片的当前版本
+     */
+    private VersionedPrtreeIndex.Version<T>[] acquireIntersecting(double xmin, double ymin, double xmax,
+                                                                 double ymax) {
+        if (xmin > xmax || ymin > ymax) {
+            throw new IllegalArgumentException("查询范围非法:" + xmin + "," + ymin + "," + xmax + "," + ymax);
+        }
+        double mx = marginX;
+        double my = marginY;
+        int colmin = col(xmin - mx);
+        int colmax = col(xmax + mx);
+        int rowmin = row(ymin - my);
+        int rowmax = row(ymax + my);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        VersionedPrtreeIndex.Version<T>[] hit = new VersionedPrtreeIndex.Version[(colmax - colmin + 1)
+                * (rowmax - rowmin + 1)];
+        int n = 0;
+        boolean done = false;
+        try {
+            for (int row = rowmin; row <= rowmax; row++) {
+                for (int col = colmin; col <= colmax; col++) {
+                    VersionedPrtreeIndex.Version<T> v = shards[row * cols + col].acquire();
+                    if (v.getIndex().envelopeIntersects(xmin, ymin, xmax, ymax)) {
+                        hit[n++] = v;
+                    } else {
+                        v.close();
+                    }
+                }
+            }
+            done = true;
+        } finally {
+            if (!done) {// 已关闭等异常，释放已取得的版本
+                release(Arrays.copyOf(hit, n));
+            }
+        }
+        return n == hit.length ? hit : Arrays.copyOf(hit, n);
+    }
+
+    private static <T> void release(VersionedPrtreeIndex.Version<T>[] versions) {
+        for (VersionedPrtreeIndex.Version<T> v : versions) {
+            v.close();
+        }
+    }
+
+    /**
+     * 关闭所有分片，分片在所有正在进行的查询结束后释放
+     */
+    @Override
+    public void close() {
+        for (VersionedPrtreeIndex<T> shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.wowtools.georewrite;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 可热替换的PrtreeIndex持有者，数据更新时在后台由supplier构建新索引，构建完成后原子地替换当前索引，无需重启
+ * <p>
+ * 查询前用acquire获取当前版本，查询结束后关闭它。替换发生时，已获取旧版本的查询继续在旧索引上完成，
+ * 旧索引在最后一个查询关闭后才被close，堆外存储的索引此时释放内存
+ * <p>
+ * 用法：
+ * <pre>
+ * try (VersionedPrtreeIndex.Version&lt;T&gt; v = holder.acquire()) {
+ *     v.getIndex().queryEnvIntersect(xmin, ymin, xmax, ymax, vister);
+ * }
+ * </pre>
+ *
+ * @param <T> 索引的对象类型
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class VersionedPrtreeIndex<T> implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(VersionedPrtreeIndex.class);
+
+    private final Supplier<PrtreeIndex<T>> supplier;
+    private final Executor executor;
+
+    private final AtomicReference<Entry<T>> current = new AtomicReference<>();
+
+    /**
+     * 正在进行的后台构建，没有时为null，guarded by this
+     */
+    private CompletableFuture<Long> building;
+    /**
+     * 当前版本号，guarded by this
+     */
+    private long lastVersion;
+    private boolean closed;
+
+    /**
+     * 一个版本的索引及其读者计数，持有者自身占一个计数，被替换后减去，计数归零时关闭索引
+     */
+    private static class Entry<T> {
+        private final PrtreeIndex<T> index;
+        private final long version;
+        private final long buildMillis;
+        private final long swapTime;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Entry(PrtreeIndex<T> index, long version, long buildMillis, long swapTime) {
+            this.index = index;
+            this.version = version;
+            this.buildMillis = buildMillis;
+            this.swapTime = swapTime;
+        }
+
+        private boolean retain() {
+            while (true) {
+                int n = refs.get();
+                if (n == 0) {// 已被释放，需重新读取当前版本
+                    return false;
+                }
+                if (refs.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (refs.decrementAndGet() == 0) {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * 查询期间持有的索引版本，关闭后索引不应再被使用
+     *
+     * @param <T> 索引的对象类型
+     * @author liuyu
+     * @date 2026年10月17日
+     */
+    public static final class Version<T> implements AutoCloseable {
+        private final Entry<T> entry;
+        private boolean released;
+
+        private Version(Entry<T> entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * @return 此版本的索引
+         */
+        public PrtreeIndex<T> getIndex() {
+            if (released) {
+                throw new IllegalStateException("版本已关闭");
+            }
+            return entry.index;
+        }
+
+        /**
+         * @return 版本号，从1开始，每次替换加1
+         */
+        public long getVersion() {
+            return entry.version;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * 在当前线程中构建第一个版本的索引
+     *
+     * @param supplier 构建索引的方法，每次调用都应读取最新数据并返回一个新的索引
+     * @param executor 执行后台构建的线程池
+     */
+    public VersionedPrtreeIndex(Supplier<PrtreeIndex<T>> supplier, Executor executor) {
+        this.supplier = supplier;
+        this.executor = executor;
+        rebuild(supplier);
+    }
+
+    /**
+     * 以一个已构建好的索引作为第一个版本，之后只能通过rebuild(Supplier)替换
+     *
+     * @param index 第一个版本的索引
+     */
+    public VersionedPrtreeIndex(PrtreeIndex<T> index) {
+        this.supplier = null;
+        this.executor = null;
+        swap(index, 0);
+    }
+
+    /**
+     * 在后台构建新版本的索引，构建完成后替换当前版本。已有构建在进行时不会重复构建，而是返回进行中的那次构建
+     *
+     * @return 构建并替换完成后得到新版本号，构建失败时异常结束，当前版本不变
+     * @throws IllegalStateException 已关闭或未指定supplier时抛出
+     */
+    public synchronized CompletableFuture<Long> rebuild() {
+        if (closed) {
+            throw new IllegalStateException("索引已关闭");
+        }
+        if (null == supplier) {
+            throw new IllegalStateException("未指定supplier，使用rebuild(Supplier)");
+        }
+        if (null != building) {
+            return building;
+        }
+        CompletableFuture<Long> f = CompletableFuture.supplyAsync(() -> rebuild(supplier), executor);
+        building = f;
+        f.whenComplete((v, e) -> {
+            synchronized (VersionedPrtreeIndex.this) {
+                building = null;
+            }
+            if (null != e) {
+                logger.error("重建索引失败", e);
+            }
+        });
+        return f;
+    }
+
+    /**
+     * 在当前线程中用给定的方法构建新版本的索引并替换当前版本，可以与查询同时进行。
+     * 多个线程同时调用时各自构建，后完成的成为当前版本
+     *
+     * @param supplier 构建索引的方法
+     * @return 新版本号
+     * @throws IllegalStateException 已关闭时抛出
+     */
+    public long rebuild(Supplier<PrtreeIndex<T>> supplier) {
+        long t = System.nanoTime();
+        PrtreeIndex<T> index = supplier.get();
+        if (null == index) {
+            throw new IllegalStateException("supplier返回了null");
+        }
+        return swap(index, (System.nanoTime() - t) / 1000000);
+    }
+
+    private long swap(PrtreeIndex<T> index, long buildMillis) {
+        Entry<T> entry;
+        Entry<T> old;
+        synchronized (this) {
+            if (closed) {// 构建期间被关闭，丢弃新索引
+                index.close();
+                throw new IllegalStateException("索引已关闭");
+            }
+            entry = new Entry<>(index, ++lastVersion, buildMillis, System.currentTimeMillis());
+            old = current.getAndSet(entry);
+        }
+        logger.info("索引已替换为version " + entry.version + ",构建耗时" + buildMillis + "ms");
+        if (null != old) {
+            old.release();
+        }
+        return entry.version;
+    }
+
+    /**
+     * 获取当前版本的索引，用完后必须关闭返回值，旧版本在所有获取者关闭后才会释放
+     *
+     * @return 当前版本
+     * @throws IllegalStateException 已关闭时抛出
+     */
+    public Version<T> acquire() {
+        while (true) {
+            Entry<T> entry = current.get();
+            if (null == entry) {
+                throw new IllegalStateException("索引已关闭");
+            }
+            if (entry.retain()) {
+                return new Version<>(entry);
+            }
+        }
+    }
+
+    /**
+     * @return 当前版本号
+     */
+    public long getVersion() {
+        return currentEntry().version;
+    }
+
+    /**
+     * @return 当前版本的构建耗时，毫秒
+     */
+    public long getBuildMillis() {
+        return currentEntry().buildMillis;
+    }
+
+    /**
+     * @return 当前版本生效的时间，System.currentTimeMillis()
+     */
+    public long getSwapTime() {
+        return currentEntry().swapTime;
+    }
+
+    private Entry<T> currentEntry() {
+        Entry<T> entry = current.get();
+        if (null == entry) {
+            throw new IllegalStateException("索引已关闭");
+        }
+        return entry;
+    }
+
+    /**
+     * 关闭持有者，当前版本在所有获取者关闭后释放，之后不能再acquire或rebuild
+     */
+    @Override
+    public void close() {
+        Entry<T> old;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            old = current.getAndSet(null);
+        }
+        old.release();
+    }
+}
@@ -0,0 +1,201 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replaces a tree on one thread while several threads query it and checks
+ * every result against a brute force reference.
+ * <p>
+ * <p>Each data entry is a double[]{xmin, ymin, xmax, ymax, id}. The writer
+ * alternates between two data sets and publishes each new tree together
+ * with the number of its data set, so a reader always knows which
+ * reference result to expect.
+ */
+public class ConcurrentQueryTest {
+    private static final int SIZE = 20000;
+    private static final int WINDOWS = 200;
+    private static final int READERS = 4;
+    private static final long RUN_MILLIS = 1500;
+
+    private static final MBRConverter<double[]> CONVERTER =
+            new MBRConverter<double[]>() {
+                public int getDimensions() {
+                    return 2;
+                }
+
+                public double getMin(int axis, double[] t) {
+                    return t[axis];
+                }
+
+                public double getMax(int axis, double[] t) {
+                    return t[axis + 2];
+                }
+            };
+
+    private static class Published<Q> {
+        private final Q tree;
+        private final int dataSet;
+
+        public Published(Q tree, int dataSet) {
+            this.tree = tree;
+            this.dataSet = dataSet;
+        }
+    }
+
+    /**
+     * The queries of one kind of tree.
+     */
+    private interface Queries<Q> {
+        Q build(List<double[]> data);
+
+        void find(Q tree, double[] w, QueryContext ctx, List<double[]> result);
+
+        int count(Q tree, double[] w);
+    }
+
+    private final List<List<double[]>> dataSets = new ArrayList<>();
+    private final double[][] windows = new double[WINDOWS][];
+    private final List<List<List<Integer>>> expected = new ArrayList<>();
+
+    public ConcurrentQueryTest() {
+        Random r = new Random(1);
+        for (int s = 0; s < 2; s++) {
+            List<double[]> data = new ArrayList<>(SIZE);
+            for (int i = 0; i < SIZE; i++) {
+                double x = r.nextDouble() * 1000;
+                double y = r.nextDouble() * 1000;
+                double w = s == 0 ? 0 : r.nextDouble() * 20;
+                data.add(new double[]{x, y, x + w, y + w, i});
+            }
+            dataSets.add(data);
+        }
+        for (int i = 0; i < WINDOWS; i++) {
+            double x = r.nextDouble() * 1000;
+            double y = r.nextDouble() * 1000;
+            double side = r.nextDouble() * 50;
+            windows[i] = new double[]{x, y, x + side, y + side};
+        }
+        for (List<double[]> data : dataSets) {
+            List<List<Integer>> ids = new ArrayList<>(WINDOWS);
+            for (double[] w : windows) {
+                List<Integer> hits = new ArrayList<>();
+                for (double[] d : data) {
+                    if (!(d[2] < w[0] || d[0] > w[2] || d[3] < w[1] || d[1] > w[3]))
+                        hits.add((int) d[4]);
+                }
+                ids.add(hits);
+            }
+            expected.add(ids);
+        }
+    }
+
+    @Test
+    public void testReplacePRTree() throws Exception {
+        run(new Queries<PRTree<double[]>>() {
+            public PRTree<double[]> build(List<double[]> data) {
+                PRTree<double[]> tree = new PRTree<>(CONVERTER, 10);
+                tree.load(data);
+                return tree;
+            }
+
+            public void find(PRTree<double[]> tree, double[] w,
+                             QueryContext ctx, List<double[]> result) {
+                tree.find(w[0], w[1], w[2], w[3], ctx, result::add);
+            }
+
+            public int count(PRTree<double[]> tree, double[] w) {
+                return tree.count(w[0], w[1], w[2], w[3]);
+            }
+        });
+    }
+
+    @Test
+    public void testReplacePRTree2D() throws Exception {
+        run(new Queries<PRTree2D<double[]>>() {
+            public PRTree2D<double[]> build(List<double[]> data) {
+                PRTree2D<double[]> tree = new PRTree2D<>(CONVERTER, 10);
+                tree.load(data);
+                return tree;
+            }
+
+            public void find(PRTree2D<double[]> tree, double[] w,
+                             QueryContext ctx, List<double[]> result) {
+                tree.find(w[0], w[1], w[2], w[3], ctx, result::add);
+            }
+
+            public int count(PRTree2D<double[]> tree, double[] w) {
+                return tree.count(w[0], w[1], w[2], w[3]);
+            }
+        });
+    }
+
+    private <Q> void run(final Queries<Q> queries) throws Exception {
+        final AtomicReference<Published<Q>> current = new AtomicReference<>(
+                new Published<>(queries.build(dataSets.get(0)), 0));
+        final AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        List<Future<Integer>> readers = new ArrayList<>();
+        try {
+            for (int t = 0; t < READERS; t++) {
+                final int seed = t;
+                readers.add(executor.submit(() -> {
+                    Random r = new Random(seed);
+                    QueryContext ctx = new QueryContext();
+                    List<double[]> found = new ArrayList<>();
+                    int checked = 0;
+                    while (running.get()) {
+                        Published<Q> p = current.get();
+                        Q tree = p.tree;
+                        int w = r.nextInt(WINDOWS);
+                        List<Integer> want = expected.get(p.dataSet).get(w);
+                        found.clear();
+                        queries.find(tree, windows[w], ctx, found);
+                        assertEquals(want, ids(found));
+                        assertEquals(want.size(), queries.count(tree, windows[w]));
+                        checked++;
+                    }
+                    return checked;
+                }));
+            }
+            long end = System.currentTimeMillis() + RUN_MILLIS;
+            int builds = 0;
+            while (System.currentTimeMillis() < end) {
+                int dataSet = ++builds % 2;
+                current.set(new Published<>(
+                        queries.build(dataSets.get(dataSet)), dataSet));
+            }
+            running.set(false);
+            int checked = 0;
+            for (Future<Integer> f : readers)
+                checked += f.get();
+            assertTrue("no tree was replaced", builds > 1);
+            assertTrue("no query was checked", checked > 0);
+        } finally {
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static List<Integer> ids(List<double[]> found) {
+        List<Integer> ret = new ArrayList<>(found.size());
+        for (double[] d : found)
+            ret.add((int) d[4]);
+        Collections.sort(ret);
+        return ret;
+    }
+}
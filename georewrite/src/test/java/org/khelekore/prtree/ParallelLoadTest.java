@@ -0,0 +1,153 @@
+package org.khelekore.prtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Loads the same data with and without a pool and checks that both trees
+ * have the same shape, node for node, and that random window queries give
+ * the same results.
+ * <p>
+ * <p>Each data entry is a double[]{xmin, ymin, xmax, ymax, id}, some
+ * entries share their bounds so that the order of equal keys in the
+ * parallel sorts matters too.
+ */
+public class ParallelLoadTest {
+    private static final int WINDOWS = 500;
+
+    private static final MBRConverter<double[]> CONVERTER =
+            new MBRConverter<double[]>() {
+                public int getDimensions() {
+                    return 2;
+                }
+
+                public double getMin(int axis, double[] t) {
+                    return t[axis];
+                }
+
+                public double getMax(int axis, double[] t) {
+                    return t[axis + 2];
+                }
+            };
+
+    @Test
+    public void testLoad() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int size : new int[]{0, 1, 9, 1000, 50000}) {
+                List<double[]> data = generate(size, size);
+                PRTree<double[]> sequential = new PRTree<>(CONVERTER, 10);
+                sequential.load(data);
+                PRTree<double[]> parallel = new PRTree<>(CONVERTER, 10);
+                parallel.load(data, pool);
+                compare(size, sequential, parallel);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadLowMemory() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int size : new int[]{0, 1, 9, 1000, 50000}) {
+                List<double[]> data = generate(size, size + 1);
+                PRTree<double[]> sequential = new PRTree<>(CONVERTER, 10);
+                sequential.loadLowMemory(data);
+                PRTree<double[]> parallel = new PRTree<>(CONVERTER, 10);
+                parallel.loadLowMemory(data, pool);
+                compare(size, sequential, parallel);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<double[]> generate(int size, long seed) {
+        Random r = new Random(seed);
+        List<double[]> data = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && r.nextInt(10) == 0) {
+                double[] d = data.get(r.nextInt(i));
+                data.add(new double[]{d[0], d[1], d[2], d[3], i});
+                continue;
+            }
+            double x = r.nextDouble() * 1000;
+            double y = r.nextDouble() * 1000;
+            double w = r.nextInt(3) == 0 ? 0 : r.nextDouble() * 30;
+            data.add(new double[]{x, y, x + w, y + r.nextDouble() * 30, i});
+        }
+        return data;
+    }
+
+    private static void compare(int size, PRTree<double[]> sequential,
+                                PRTree<double[]> parallel) {
+        assertEquals("leafs of " + size, sequential.getNumberOfLeaves(),
+                parallel.getNumberOfLeaves());
+        NodeStats ss = sequential.getNodeStats();
+        NodeStats ps = parallel.getNodeStats();
+        assertEquals("height of " + size, ss.getHeight(), ps.getHeight());
+        assertEquals("internal nodes of " + size, ss.getInternalNodes(),
+                ps.getInternalNodes());
+        assertEquals("leaf nodes of " + size, ss.getLeafNodes(),
+                ps.getLeafNodes());
+        assertEquals("leaf fill of " + size, ss.getMeanLeafFill(),
+                ps.getMeanLeafFill(), 0);
+        assertEquals("overlap of " + size, ss.getMeanOverlap(),
+                ps.getMeanOverlap(), 0);
+        if (!sequential.isEmpty())
+            compareNodes(size, sequential, parallel);
+        Random r = new Random(size);
+        for (int i = 0; i < WINDOWS; i++) {
+            double x = r.nextDouble() * 1100 - 50;
+            double y = r.nextDouble() * 1100 - 50;
+            double side = r.nextDouble() * (i % 10 == 0 ? 500 : 50);
+            List<Integer> want = ids(sequential, x, y, x + side, y + side);
+            assertEquals("window " + i + " of " + size, want,
+                    ids(parallel, x, y, x + side, y + side));
+        }
+    }
+
+    /**
+     * The pooled loader only changes how the sorts are run, so it has to
+     * build the very same nodes.
+     */
+    private static void compareNodes(int size, PRTree<double[]> sequential,
+                                     PRTree<double[]> parallel) {
+        BreadthFirstNodes<double[]> sn =
+                new BreadthFirstNodes<>(sequential.getRoot());
+        BreadthFirstNodes<double[]> pn =
+                new BreadthFirstNodes<>(parallel.getRoot());
+        assertEquals("nodes of " + size, sn.getNumberOfNodes(),
+                pn.getNumberOfNodes());
+        for (int i = 0; i < sn.getNumberOfNodes(); i++) {
+            Node<double[]> s = sn.get(i);
+            Node<double[]> p = pn.get(i);
+            String node = "node " + i + " of " + size;
+            assertEquals(node, s.size(), p.size());
+            MBR sm = s.getMBR(CONVERTER);
+            MBR pm = p.getMBR(CONVERTER);
+            for (int axis = 0; axis < 2; axis++) {
+                assertEquals(node, sm.getMin(axis), pm.getMin(axis), 0);
+                assertEquals(node, sm.getMax(axis), pm.getMax(axis), 0);
+            }
+        }
+    }
+
+    private static List<Integer> ids(PRTree<double[]> tree, double xmin,
+                                     double ymin, double xmax, double ymax) {
+        List<Integer> ret = new ArrayList<>();
+        for (double[] d : tree.find(xmin, ymin, xmax, ymax))
+            ret.add((int) d[4]);
+        Collections.sort(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,89 @@
+package org.wowtools.georewrite.test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.h2.tools.SimpleResultSet;
+import org.json.JSONObject;
+import org.wowtools.georewrite.GeoSqlQueryer;
+import org.wowtools.georewrite.PrtreeIndex;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * 一个精确查询的例子
+ * </p>
+ * 初始化时，在范围[100,20,120,30]之间生成了10,000条斜线，查询时按线的实际形状而不是外接矩形判断是否与范围相交，
+ * 避免把外接矩形与瓦片相交、线本身并不经过瓦片的斜线也输出出去
+ *
+ * @author liuyu
+ * @date 2026年10月17日
+ */
+public class TestLineQueryer extends GeoSqlQueryer {
+    private static final int num = 10000;
+
+    private static class MyLine {
+        int id;
+        String name;
+        LineString line;
+        byte[] wkb;
+    }
+
+    private static final PrtreeIndex<MyLine> sidx;
+
+    static {
+        Random r = new Random(233);
+        GeometryFactory gf = new GeometryFactory();
+        WKBWriter wr = new WKBWriter();
+        ArrayList<MyLine> features = new ArrayList<>();
+        for (int i = 0; i < num; i++) {
+            MyLine f = new MyLine();
+            f.id = i;
+            f.name = "LINE-" + i;
+            Coordinate coordinate1 = new Coordinate(100 + r.nextDouble() * 20, 20 + r.nextDouble() * 10);
+            Coordinate coordinate2 = new Coordinate(100 + r.nextDouble() * 20, 20 + r.nextDouble() * 10);
+            f.line = gf.createLineString(new Coordinate[]{coordinate1, coordinate2});
+            f.wkb = wr.write(f.line);
+            features.add(f);
+        }
+        // 精确查询时会通过geometryBuilder获取候选对象的geometry，这里直接返回保存好的线
+        sidx = new PrtreeIndex<>(features, (feature) -> {
+            return feature.line;
+        });
+    }
+
+    public TestLineQueryer(String tableName, HashMap<String, ColumnDefinition> columnInfo, JSONObject initParam) {
+        super(tableName, columnInfo, initParam);
+    }
+
+    @Override
+    public ResultSet query(Connection conn, String columnPart, String fun, String pg) throws SQLException {
+        String[] columns = columnPart2columnArr(columnPart);
+        SimpleResultSet rs = buildSimpleResultSetByColumns(columns);
+
+        // 精确查询，pg2PreparedGeometry会缓存同一瓦片范围的PreparedGeometry
+        sidx.queryGeometryIntersect(pg2PreparedGeometry(pg), (line) -> {
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                String columnName = columns[i];
+                if ("SHAPE".equals(columnName)) {
+                    row[i] = line.wkb;
+                } else if ("NAME".equals(columnName)) {
+                    row[i] = line.name;
+                } else {
+                    row[i] = line.id;
+                }
+            }
+            rs.addRow(row);
+        });
+        return rs;
+    }
+
+}